@@ -4,7 +4,9 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 /**
  * See the specification for information about what the different visit
  * methods should do.
@@ -13,6 +15,14 @@ public final class Analyzer implements Ast.Visitor<Void> {
 
     public Scope scope;
 
+    /**
+     * The slots of the globals defined so far and of the variables of the
+     * function being analyzed, if any, keyed by the variables defined in the
+     * scope so that accesses can be resolved to them.
+     */
+    private final Map<Environment.Variable, Integer> globals = new IdentityHashMap<>();
+    private Map<Environment.Variable, Integer> locals = null;
+
     public Analyzer(Scope parent) {
         scope = new Scope(parent);
         scope.defineFunction("print", "System.out.println", Arrays.asList(Environment.Type.ANY), Environment.Type.NIL, args -> Environment.NIL);
@@ -60,6 +70,8 @@ public final class Analyzer implements Ast.Visitor<Void> {
 
         scope.defineVariable(name, name, Environment.getType(ast.getTypeName()), true, Environment.NIL);
         ast.setVariable(scope.lookupVariable(name));
+        ast.setSlot(globals.size());
+        globals.put(ast.getVariable(), ast.getSlot());
 
         return null;
     }
@@ -86,9 +98,10 @@ public final class Analyzer implements Ast.Visitor<Void> {
 
         try{
             scope = new Scope(scope);
+            locals = new IdentityHashMap<>();
             for (int i = 0; i < ast.getParameters().size(); i++){
                 String paramName = ast.getParameters().get(i);
-                scope.defineVariable(paramName, paramName, params.get(i), true, Environment.NIL);
+                locals.put(scope.defineVariable(paramName, paramName, params.get(i), true, Environment.NIL), i);
             }
 
             for (int i = 0; i < ast.getStatements().size(); i++){
@@ -96,8 +109,10 @@ public final class Analyzer implements Ast.Visitor<Void> {
             }
 
             ast.setFunction(scope.lookupFunction(ast.getName(), ast.getParameters().size()));
+            ast.setFrameSize(locals.size());
         } finally {
             scope = scope.getParent();
+            locals = null;
         }
 
 
@@ -138,6 +153,10 @@ public final class Analyzer implements Ast.Visitor<Void> {
         }
 
         ast.setVariable(scope.defineVariable(name, name,type, true, Environment.NIL));
+        if (locals != null){
+            ast.setSlot(locals.size());
+            locals.put(ast.getVariable(), ast.getSlot());
+        }
 
         return null;
 
@@ -362,6 +381,11 @@ public final class Analyzer implements Ast.Visitor<Void> {
         }
 
         ast.setVariable(scope.lookupVariable(ast.getName()));
+        if (locals != null && locals.containsKey(ast.getVariable())){
+            ast.setSlot(0, locals.get(ast.getVariable()));
+        } else if (locals != null && globals.containsKey(ast.getVariable())){
+            ast.setSlot(1, globals.get(ast.getVariable()));
+        }
 
         return null;
     }
@@ -385,6 +409,11 @@ public final class Analyzer implements Ast.Visitor<Void> {
 
     @Override
     public Void visit(Ast.Expression.PlcList ast) {
+        if (ast.isPacked())
+        {
+            visitPacked(ast);
+            return null;
+        }
         for (Ast.Expression a : ast.getValues())
         {
             visit(a);
@@ -393,6 +422,32 @@ public final class Analyzer implements Ast.Visitor<Void> {
         return null;
     }
 
+    /**
+     * Checks a packed list as visiting each of its literals would, with the
+     * same range checks as {@link #visit(Ast.Expression.Literal)}, but without
+     * creating them and checking the element type once.
+     */
+    private void visitPacked(Ast.Expression.PlcList ast) {
+        long[] integers = ast.getIntegers();
+        double[] decimals = ast.getDecimals();
+        int size = integers != null ? integers.length : decimals.length;
+        for (int i = 0; i < size; i++)
+        {
+            if (integers != null && (integers[i] > Integer.MAX_VALUE || integers[i] < Integer.MIN_VALUE))
+            {
+                throw new RuntimeException("Integer Overflow");
+            }
+            else if (decimals != null && !(decimals[i] <= Double.MAX_VALUE && decimals[i] >= Double.MIN_VALUE))
+            {
+                throw new RuntimeException("Decimal Overflow");
+            }
+            if (i == 0)
+            {
+                requireAssignable(ast.getType(), integers != null ? Environment.Type.INTEGER : Environment.Type.DECIMAL);
+            }
+        }
+    }
+
     public static void requireAssignable(Environment.Type target, Environment.Type type) {
         String t1 = target.getName();
         String t2 = type.getName();
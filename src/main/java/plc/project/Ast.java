@@ -1,9 +1,14 @@
 package plc.project;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.RandomAccess;
 
 /**
  * See the Parser assignment specification for specific notes on each AST class
@@ -53,6 +58,7 @@ public abstract class Ast {
         private final boolean mutable;
         private final Optional<Ast.Expression> value;
         private Environment.Variable variable = null;
+        private int slot = -1;
 
         public Global(String name, boolean mutable, Optional<Expression> value) {
             this(name, "Any", mutable, value);
@@ -93,6 +99,19 @@ public abstract class Ast {
             this.variable = variable;
         }
 
+        /**
+         * Returns the slot of the global among the globals of the source, set
+         * by the {@link Analyzer}, or -1 if unresolved. Like the slots of
+         * {@link Ast.Expression.Access}, it is not compared by equals.
+         */
+        public int getSlot() {
+            return slot;
+        }
+
+        public void setSlot(int slot) {
+            this.slot = slot;
+        }
+
 
         @Override
         public boolean equals(Object obj) {
@@ -125,7 +144,8 @@ public abstract class Ast {
         private final Optional<String> returnTypeName;
         private final List<Statement> statements;
         private Environment.Function function = null;
-        
+        private int frameSize = -1;
+
         public Function(String name, List<String> parameters, List<Statement> statements) {
             this(name, parameters, new ArrayList<>(), Optional.of("Any"), statements);
             for (int i = 0; i < parameters.size(); i++) {
@@ -173,6 +193,19 @@ public abstract class Ast {
             this.function = function;
         }
 
+        /**
+         * Returns the number of slots in the frame of the function, set by
+         * the {@link Analyzer}, or -1 if its variables are unresolved. The
+         * parameters take the first slots, in order.
+         */
+        public int getFrameSize() {
+            return frameSize;
+        }
+
+        public void setFrameSize(int frameSize) {
+            this.frameSize = frameSize;
+        }
+
 
         @Override
         public boolean equals(Object obj) {
@@ -235,6 +268,7 @@ public abstract class Ast {
             private final Optional<String> typeName;
             private Optional<Ast.Expression> value;
             private Environment.Variable variable = null;
+            private int slot = -1;
 
             public Declaration(String name, Optional<Ast.Expression> value) {
                 this(name, Optional.empty(), value);
@@ -268,8 +302,20 @@ public abstract class Ast {
             public void setVariable(Environment.Variable variable) {
                 this.variable = variable;
             }
-            
-            
+
+            /**
+             * Returns the slot of the variable in the frame of its function,
+             * set by the {@link Analyzer}, or -1 if unresolved.
+             */
+            public int getSlot() {
+                return slot;
+            }
+
+            public void setSlot(int slot) {
+                this.slot = slot;
+            }
+
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Declaration &&
@@ -658,6 +704,8 @@ public abstract class Ast {
             private final Optional<Ast.Expression> offset;
             private final String name;
             private Environment.Variable variable = null;
+            private int depth = -1;
+            private int slot = -1;
 
             public Access(Optional<Ast.Expression> offset, String name) {
                 this.offset = offset;
@@ -683,6 +731,30 @@ public abstract class Ast {
                 this.variable = variable;
             }
 
+            /**
+             * Returns the lexical depth of the variable, set by the {@link
+             * Analyzer}: 0 for a variable in the frame of the enclosing
+             * function, 1 for a global, or -1 if unresolved, in which case it
+             * is looked up by name. Neither the depth nor the slot is compared
+             * by equals, as they only cache the result of that lookup.
+             */
+            public int getDepth() {
+                return depth;
+            }
+
+            /**
+             * Returns the slot of the variable at its depth, or -1 if
+             * unresolved.
+             */
+            public int getSlot() {
+                return slot;
+            }
+
+            public void setSlot(int depth, int slot) {
+                this.depth = depth;
+                this.slot = slot;
+            }
+
             @Override
             public Environment.Type getType() {
                 return getVariable().getType();
@@ -765,17 +837,66 @@ public abstract class Ast {
         public static final class PlcList extends Ast.Expression {
 
             private final List<Ast.Expression> values;
+            private final long[] integers;
+            private final double[] decimals;
             private Environment.Type type = null;
 
 
             public PlcList(List<Ast.Expression> values) {
                 this.values = values;
-            }
-
+                this.integers = null;
+                this.decimals = null;
+            }
+
+            /**
+             * Creates a list of integer literals packed into an array, which
+             * is used directly rather than copied.
+             */
+            public PlcList(long[] integers) {
+                this.values = new Packed();
+                this.integers = integers;
+                this.decimals = null;
+            }
+
+            /**
+             * Creates a list of decimal literals packed into an array, each
+             * being the {@link BigDecimal#valueOf(double)} of its element.
+             */
+            public PlcList(double[] decimals) {
+                this.values = new Packed();
+                this.integers = null;
+                this.decimals = decimals;
+            }
+
+            /**
+             * Returns the values of the list. For a packed list, this is a
+             * view creating each literal when accessed, typed once the list
+             * itself has been.
+             */
             public List<Ast.Expression> getValues() {
                 return values;
             }
 
+            public boolean isPacked() {
+                return integers != null || decimals != null;
+            }
+
+            /**
+             * Returns the packed integers of the list, or null if it is not
+             * a packed list of integers.
+             */
+            public long[] getIntegers() {
+                return integers;
+            }
+
+            /**
+             * Returns the packed decimals of the list, or null if it is not
+             * a packed list of decimals.
+             */
+            public double[] getDecimals() {
+                return decimals;
+            }
+
             @Override
             public Environment.Type getType() {
                 if (type == null) {
@@ -790,9 +911,16 @@ public abstract class Ast {
 
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Ast.Expression.PlcList &&
-                        values.equals(((Ast.Expression.PlcList) obj).values) &&
-                        Objects.equals(type, ((Ast.Expression.PlcList) obj).type);
+                if (!(obj instanceof Ast.Expression.PlcList) || !Objects.equals(type, ((Ast.Expression.PlcList) obj).type)) {
+                    return false;
+                }
+                PlcList other = (PlcList) obj;
+                if (integers != null && other.integers != null) {
+                    return Arrays.equals(integers, other.integers);
+                } else if (decimals != null && other.decimals != null) {
+                    return Arrays.equals(decimals, other.decimals);
+                }
+                return values.equals(other.values);
             }
 
             @Override
@@ -803,6 +931,28 @@ public abstract class Ast {
                         '}';
             }
 
+            private final class Packed extends AbstractList<Ast.Expression> implements RandomAccess {
+
+                @Override
+                public Ast.Expression get(int index) {
+                    Literal literal;
+                    if (integers != null) {
+                        literal = new Literal(BigInteger.valueOf(integers[index]));
+                        literal.type = type != null ? Environment.Type.INTEGER : null;
+                    } else {
+                        literal = new Literal(BigDecimal.valueOf(decimals[index]));
+                        literal.type = type != null ? Environment.Type.DECIMAL : null;
+                    }
+                    return literal;
+                }
+
+                @Override
+                public int size() {
+                    return integers != null ? integers.length : decimals.length;
+                }
+
+            }
+
         }
 
     }
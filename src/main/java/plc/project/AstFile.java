@@ -0,0 +1,273 @@
+package plc.project;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Saves a parsed and analyzed {@link Ast.Source} to a binary file and loads it
+ * back through a memory-mapped view, so unchanged sources need not be lexed,
+ * parsed and analyzed again.
+ *
+ * The file holds a header, the nodes of the {@link FlatAst} as big-endian
+ * ints, the offset of every pool entry, and the pool entries themselves, each
+ * a tag followed by its value. Types, variables and functions set by the
+ * {@link Analyzer} are pool entries too, stored by name with types resolved
+ * through {@link Environment#getType(String)} when loaded, and the slots and
+ * frame sizes the analyzer resolved are stored in the nodes. Functions are
+ * loaded as the analyzer defines them, with a body returning {@code NIL}:
+ * they are placeholders which must not be invoked, as the {@link Interpreter}
+ * defines the functions it calls from the tree itself. Loading maps the
+ * file and reads the header only: nodes are read from the mapping, pool
+ * entries are decoded on first access, and the globals and functions of the
+ * returned source are decoded the first time they are accessed.
+ *
+ * The header holds a magic number, the format {@link #VERSION} and a stamp
+ * chosen by the caller to identify the source the file was written for, such
+ * as a hash of its text. A file with a different version or stamp is stale
+ * and is not loaded.
+ */
+public final class AstFile {
+
+    private static final int MAGIC = 0x504C4341;
+
+    /**
+     * The version of the format, to be incremented whenever the format or
+     * the encoding of {@link FlatAst} changes.
+     */
+    public static final int VERSION = 2;
+
+    private static final int HEADER = 32;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INTEGER = 2;
+    private static final byte DECIMAL = 3;
+    private static final byte CHARACTER = 4;
+    private static final byte BOOLEAN = 5;
+    private static final byte STRINGS = 6;
+    private static final byte TYPE = 7;
+    private static final byte VARIABLE = 8;
+    private static final byte FUNCTION = 9;
+
+    private AstFile() {}
+
+    /**
+     * Writes the source with its analysis to the given path, replacing any
+     * existing file only once the new one is complete. The temporary file the
+     * new one is written to is deleted if writing fails.
+     */
+    public static void write(Path path, Ast.Source source, long stamp) throws IOException {
+        FlatAst ast = FlatAst.encode(source, true);
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(data);
+        ByteBuffer offsets = ByteBuffer.allocate(4 * ast.poolSize());
+        for (int i = 0; i < ast.poolSize(); i++) {
+            offsets.putInt(out.size());
+            writeEntry(out, ast.pool(i));
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        header.putInt(MAGIC).putInt(VERSION).putLong(stamp).putInt(ast.length()).putInt(ast.root()).putInt(ast.poolSize());
+        ByteBuffer nodes = ByteBuffer.allocate(4 * ast.length());
+        nodes.asIntBuffer().put(ast.nodes());
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        boolean moved = false;
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer[] buffers = {header.rewind(), nodes, offsets.rewind(), ByteBuffer.wrap(data.toByteArray())};
+                long remaining = HEADER + nodes.capacity() + offsets.capacity() + data.size();
+                while (remaining > 0) {
+                    remaining -= channel.write(buffers);
+                }
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+            moved = true;
+        } finally {
+            if (!moved) {
+                Files.deleteIfExists(temporary);
+            }
+        }
+    }
+
+    /**
+     * Loads the source saved at the given path, or returns empty if the file
+     * is missing, stale, written by another version of the format or too
+     * short for the nodes and pool its header describes. As only the header
+     * is checked, a file corrupted past it throws an {@link
+     * IllegalStateException} when the corrupt part is decoded.
+     */
+    public static Optional<Ast.Source> read(Path path, long stamp) throws IOException {
+        return load(path, stamp).map(FlatAst::toLazyAst);
+    }
+
+    /**
+     * Loads the flat AST saved at the given path, as in {@link #read(Path,
+     * long)}.
+     */
+    public static Optional<FlatAst> load(Path path, long stamp) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return Optional.empty();
+        }
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER) {
+                return Optional.empty();
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getLong(8) != stamp) {
+            return Optional.empty();
+        }
+        int length = buffer.getInt(16);
+        int root = buffer.getInt(20);
+        int poolSize = buffer.getInt(24);
+        if (length < 0 || poolSize < 0 || root < 0 || root >= length
+                || HEADER + 4L * length + 4L * poolSize > buffer.capacity()) {
+            return Optional.empty();
+        }
+        IntBuffer nodes = buffer.slice(HEADER, 4 * length).asIntBuffer();
+        IntBuffer offsets = buffer.slice(HEADER + 4 * length, 4 * poolSize).asIntBuffer();
+        int data = HEADER + 4 * length + 4 * poolSize;
+        return Optional.of(new FlatAst(nodes, root, poolSize, index -> readEntry(buffer, data + offsets.get(index))));
+    }
+
+    private static void writeEntry(DataOutputStream out, Object entry) throws IOException {
+        if (entry == null) {
+            out.writeByte(NULL);
+        } else if (entry instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) entry);
+        } else if (entry instanceof BigInteger) {
+            out.writeByte(INTEGER);
+            writeBytes(out, ((BigInteger) entry).toByteArray());
+        } else if (entry instanceof BigDecimal) {
+            out.writeByte(DECIMAL);
+            out.writeInt(((BigDecimal) entry).scale());
+            writeBytes(out, ((BigDecimal) entry).unscaledValue().toByteArray());
+        } else if (entry instanceof Character) {
+            out.writeByte(CHARACTER);
+            out.writeChar((Character) entry);
+        } else if (entry instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) entry);
+        } else if (entry instanceof String[]) {
+            out.writeByte(STRINGS);
+            out.writeInt(((String[]) entry).length);
+            for (String string : (String[]) entry) {
+                writeString(out, string);
+            }
+        } else if (entry instanceof Environment.Type) {
+            out.writeByte(TYPE);
+            writeString(out, ((Environment.Type) entry).getName());
+        } else if (entry instanceof Environment.Variable) {
+            Environment.Variable variable = (Environment.Variable) entry;
+            out.writeByte(VARIABLE);
+            writeString(out, variable.getName());
+            writeString(out, variable.getJvmName());
+            writeString(out, variable.getType().getName());
+            out.writeBoolean(variable.getMutable());
+        } else if (entry instanceof Environment.Function) {
+            Environment.Function function = (Environment.Function) entry;
+            out.writeByte(FUNCTION);
+            writeString(out, function.getName());
+            writeString(out, function.getJvmName());
+            out.writeInt(function.getParameterTypes().size());
+            for (Environment.Type type : function.getParameterTypes()) {
+                writeString(out, type.getName());
+            }
+            writeString(out, function.getReturnType().getName());
+        } else {
+            throw new IllegalArgumentException("Cannot save " + entry.getClass().getName() + ".");
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        writeBytes(out, string.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Decodes the pool entry at the given position of the file. Variables
+     * are loaded with a {@code NIL} value and functions with a body returning
+     * {@code NIL}, as the analyzer defines them.
+     */
+    private static Object readEntry(ByteBuffer buffer, int position) {
+        try {
+            return readEntry(buffer.duplicate().position(position));
+        } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+            throw new IllegalStateException("Corrupt pool entry at " + position + ".", e);
+        }
+    }
+
+    private static Object readEntry(ByteBuffer in) {
+        int position = in.position();
+        switch (in.get()) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(in);
+            case INTEGER:
+                return new BigInteger(readBytes(in));
+            case DECIMAL:
+                int scale = in.getInt();
+                return new BigDecimal(new BigInteger(readBytes(in)), scale);
+            case CHARACTER:
+                return in.getChar();
+            case BOOLEAN:
+                return in.get() != 0;
+            case STRINGS:
+                String[] strings = new String[in.getInt()];
+                for (int i = 0; i < strings.length; i++) {
+                    strings[i] = readString(in);
+                }
+                return strings;
+            case TYPE:
+                return Environment.getType(readString(in));
+            case VARIABLE:
+                return new Environment.Variable(readString(in), readString(in), Environment.getType(readString(in)),
+                        in.get() != 0, Environment.NIL);
+            case FUNCTION:
+                String name = readString(in);
+                String jvmName = readString(in);
+                List<Environment.Type> parameterTypes = new ArrayList<>();
+                for (int i = in.getInt(); i > 0; i--) {
+                    parameterTypes.add(Environment.getType(readString(in)));
+                }
+                return new Environment.Function(name, jvmName, parameterTypes, Environment.getType(readString(in)),
+                        args -> Environment.NIL);
+            default:
+                throw new IllegalStateException("Corrupt pool entry at " + position + ".");
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return bytes;
+    }
+
+}
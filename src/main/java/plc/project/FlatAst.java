@@ -0,0 +1,650 @@
+package plc.project;
+
+import java.nio.IntBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * A compact alternative to an {@link Ast.Source} tree, storing every node in
+ * a single {@code int[]} arena instead of one object per node, with the names,
+ * literals and operators of the nodes in a separate pool.
+ *
+ * Each node takes {@code 5 + size} consecutive ints: its {@link Kind}, a data
+ * value, a binding, a slot, the number of children and the offsets of the
+ * children. Children are stored before their parent, so the root is the last
+ * node. The data value depends on the kind, see {@link Kind}. The binding is
+ * the pool index of the type, variable or function set on the node by the
+ * {@link Analyzer}, or -1 if the tree was encoded without them. Every binding
+ * is pooled once, so nodes sharing a variable or function still share it
+ * after decoding. The slot is the slot or frame size the analyzer resolved
+ * for the node, see {@link #slot(int)}, or -1 if it has none. {@link #toAst()}
+ * creates a fresh tree for the analyzer, interpreter and generator to work on.
+ */
+public final class FlatAst {
+
+    /**
+     * The kinds of nodes, with the data and children of each.
+     */
+    public enum Kind {
+        /** Data is the number of globals; children are globals then functions. */
+        SOURCE,
+        /** Data is the pool index of the name, type name and mutability; children are the optional value. */
+        GLOBAL,
+        /**
+         * Data is the pool index of the name, the return type name or null, and
+         * the parameter names and type names as arrays; children are the statements.
+         */
+        FUNCTION,
+        /** Data is unused; the child is the expression. */
+        EXPRESSION,
+        /** Data is the pool index of the name and type name or null; children are the optional value. */
+        DECLARATION,
+        /** Data is unused; children are the receiver and the value. */
+        ASSIGNMENT,
+        /** Data is the number of then statements; children are the condition, then and else statements. */
+        IF,
+        /** Data is unused; children are the condition and the cases. */
+        SWITCH,
+        /** Data is 1 if the case has a value and 0 for a default; children are the value if any and the statements. */
+        CASE,
+        /** Data is unused; children are the condition and the statements. */
+        WHILE,
+        /** Data is unused; the child is the value. */
+        RETURN,
+        /** Data is the pool index of the literal; no children. */
+        LITERAL,
+        /** Data is unused; the child is the expression. */
+        GROUP,
+        /** Data is the pool index of the operator; children are the left and right operands. */
+        BINARY,
+        /** Data is the pool index of the name; children are the optional offset. */
+        ACCESS,
+        /** Data is the pool index of the name; children are the arguments. */
+        CALL,
+        /** Data is unused; children are the values. */
+        LIST;
+
+        private static final Kind[] VALUES = values();
+    }
+
+    /**
+     * Marks pool entries which have not been loaded yet.
+     */
+    private static final Object UNLOADED = new Object();
+
+    private IntBuffer nodes;
+    private Object[] pool;
+    private int root;
+
+    /**
+     * Loads pool entries on first access, or null if they are all loaded.
+     */
+    private final IntFunction<Object> loader;
+
+    /**
+     * The arena, the children offsets of the nodes being written and the
+     * pooled bindings, only used while encoding.
+     */
+    private int[] arena;
+    private int length = 0;
+    private int poolSize = 0;
+    private int[] stack;
+    private int depth = 0;
+    private Map<Object, Integer> bindings;
+
+    private FlatAst(boolean analyzed) {
+        this.arena = new int[1024];
+        this.pool = new Object[256];
+        this.stack = new int[64];
+        this.bindings = analyzed ? new IdentityHashMap<>() : null;
+        this.loader = null;
+    }
+
+    /**
+     * Creates a flat AST over existing nodes, such as a view of a mapped
+     * file, whose pool entries are loaded by the given loader on first access.
+     */
+    FlatAst(IntBuffer nodes, int root, int poolSize, IntFunction<Object> loader) {
+        this.nodes = nodes;
+        this.root = root;
+        this.pool = new Object[poolSize];
+        this.loader = loader;
+        Arrays.fill(pool, UNLOADED);
+    }
+
+    /**
+     * Encodes the given source into a new flat AST, without bindings.
+     */
+    public static FlatAst encode(Ast.Source source) {
+        return encode(source, false);
+    }
+
+    /**
+     * Encodes the given source into a new flat AST. If {@code analyzed} is
+     * set, the types, variables and functions set by the {@link Analyzer} are
+     * encoded as well.
+     */
+    public static FlatAst encode(Ast.Source source, boolean analyzed) {
+        FlatAst ast = new FlatAst(analyzed);
+        ast.root = ast.source(source);
+        ast.nodes = IntBuffer.wrap(Arrays.copyOf(ast.arena, ast.length));
+        ast.pool = Arrays.copyOf(ast.pool, ast.poolSize);
+        ast.arena = null;
+        ast.stack = null;
+        ast.bindings = null;
+        return ast;
+    }
+
+    /**
+     * Returns the offset of the root node, which is always a {@link
+     * Kind#SOURCE}.
+     */
+    public int root() {
+        return root;
+    }
+
+    public Kind kind(int node) {
+        return Kind.VALUES[nodes.get(node)];
+    }
+
+    public int data(int node) {
+        return nodes.get(node + 1);
+    }
+
+    /**
+     * Returns the pool index of the binding of the node, or -1 if it has
+     * none.
+     */
+    public int binding(int node) {
+        return nodes.get(node + 2);
+    }
+
+    /**
+     * Returns the slot resolved for the node by the {@link Analyzer}, or -1 if
+     * it has none: the slot of a global or declaration, the frame size of a
+     * function, and for an access twice the slot plus its depth, which is
+     * either 0 or 1.
+     */
+    public int slot(int node) {
+        return nodes.get(node + 3);
+    }
+
+    public int size(int node) {
+        return nodes.get(node + 4);
+    }
+
+    public int child(int node, int index) {
+        return nodes.get(node + 5 + index);
+    }
+
+    /**
+     * Returns the pool entry at the given index, usually the data of a node
+     * plus an offset.
+     */
+    public Object pool(int index) {
+        Object entry = pool[index];
+        if (entry == UNLOADED) {
+            entry = loader.apply(index);
+            pool[index] = entry;
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the number of ints used by the nodes.
+     */
+    public int length() {
+        return nodes.limit();
+    }
+
+    public int poolSize() {
+        return pool.length;
+    }
+
+    /**
+     * Returns the nodes, positioned at the first.
+     */
+    IntBuffer nodes() {
+        return nodes.duplicate().rewind();
+    }
+
+    /**
+     * Returns a cursor positioned at the root.
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Decodes this flat AST back into an {@link Ast.Source} tree.
+     */
+    public Ast.Source toAst() {
+        int globals = data(root);
+        List<Ast.Global> global = new ArrayList<>(globals);
+        List<Ast.Function> function = new ArrayList<>(size(root) - globals);
+        for (int i = 0; i < size(root); i++) {
+            if (i < globals) {
+                global.add(global(child(root, i)));
+            } else {
+                function.add(function(child(root, i)));
+            }
+        }
+        return new Ast.Source(global, function);
+    }
+
+    /**
+     * Returns a source whose globals and functions are only decoded the first
+     * time they are accessed, so only the parts of a large tree which are
+     * actually used are ever materialized.
+     */
+    public Ast.Source toLazyAst() {
+        int globals = data(root);
+        return new Ast.Source(new Lazy<>(globals, i -> global(child(root, i))),
+                new Lazy<>(size(root) - globals, i -> function(child(root, globals + i))));
+    }
+
+    /**
+     * Decodes the {@link Kind#GLOBAL} node at the given offset.
+     */
+    public Ast.Global global(int node) {
+        int data = data(node);
+        Ast.Global global = new Ast.Global((String) pool(data), (String) pool(data + 1), (Boolean) pool(data + 2), optional(node, size(node) > 0));
+        if (binding(node) >= 0) {
+            global.setVariable((Environment.Variable) pool(binding(node)));
+        }
+        global.setSlot(slot(node));
+        return global;
+    }
+
+    /**
+     * Decodes the {@link Kind#FUNCTION} node at the given offset.
+     */
+    public Ast.Function function(int node) {
+        int data = data(node);
+        Ast.Function function = new Ast.Function((String) pool(data), Arrays.asList((String[]) pool(data + 2)), Arrays.asList((String[]) pool(data + 3)),
+                Optional.ofNullable((String) pool(data + 1)), statements(node, 0, size(node)));
+        if (binding(node) >= 0) {
+            function.setFunction((Environment.Function) pool(binding(node)));
+        }
+        function.setFrameSize(slot(node));
+        return function;
+    }
+
+    /**
+     * Decodes the statement node at the given offset.
+     */
+    public Ast.Statement statement(int node) {
+        switch (kind(node)) {
+            case EXPRESSION:
+                return new Ast.Statement.Expression(expression(child(node, 0)));
+            case DECLARATION:
+                Ast.Statement.Declaration declaration = new Ast.Statement.Declaration((String) pool(data(node)),
+                        Optional.ofNullable((String) pool(data(node) + 1)), optional(node, size(node) > 0));
+                if (binding(node) >= 0) {
+                    declaration.setVariable((Environment.Variable) pool(binding(node)));
+                }
+                declaration.setSlot(slot(node));
+                return declaration;
+            case ASSIGNMENT:
+                return new Ast.Statement.Assignment(expression(child(node, 0)), expression(child(node, 1)));
+            case IF:
+                return new Ast.Statement.If(expression(child(node, 0)),
+                        statements(node, 1, 1 + data(node)), statements(node, 1 + data(node), size(node)));
+            case SWITCH:
+                List<Ast.Statement.Case> cases = new ArrayList<>(size(node) - 1);
+                for (int i = 1; i < size(node); i++) {
+                    cases.add((Ast.Statement.Case) statement(child(node, i)));
+                }
+                return new Ast.Statement.Switch(expression(child(node, 0)), cases);
+            case CASE:
+                return new Ast.Statement.Case(optional(node, data(node) != 0), statements(node, data(node), size(node)));
+            case WHILE:
+                return new Ast.Statement.While(expression(child(node, 0)), statements(node, 1, size(node)));
+            case RETURN:
+                return new Ast.Statement.Return(expression(child(node, 0)));
+            default:
+                throw new AssertionError(kind(node));
+        }
+    }
+
+    /**
+     * Decodes the expression node at the given offset.
+     */
+    public Ast.Expression expression(int node) {
+        Object binding = binding(node) >= 0 ? pool(binding(node)) : null;
+        switch (kind(node)) {
+            case LITERAL:
+                Ast.Expression.Literal literal = new Ast.Expression.Literal(pool(data(node)));
+                literal.setType((Environment.Type) binding);
+                return literal;
+            case GROUP:
+                Ast.Expression.Group group = new Ast.Expression.Group(expression(child(node, 0)));
+                group.setType((Environment.Type) binding);
+                return group;
+            case BINARY:
+                Ast.Expression.Binary binary = new Ast.Expression.Binary((String) pool(data(node)), expression(child(node, 0)), expression(child(node, 1)));
+                binary.setType((Environment.Type) binding);
+                return binary;
+            case ACCESS:
+                Ast.Expression.Access access = new Ast.Expression.Access(optional(node, size(node) > 0), (String) pool(data(node)));
+                if (binding != null) {
+                    access.setVariable((Environment.Variable) binding);
+                }
+                if (slot(node) >= 0) {
+                    access.setSlot(slot(node) & 1, slot(node) >> 1);
+                }
+                return access;
+            case CALL:
+                Ast.Expression.Function function = new Ast.Expression.Function((String) pool(data(node)), expressions(node));
+                if (binding != null) {
+                    function.setFunction((Environment.Function) binding);
+                }
+                return function;
+            case LIST:
+                Ast.Expression.PlcList list = new Ast.Expression.PlcList(expressions(node));
+                list.setType((Environment.Type) binding);
+                return list;
+            default:
+                throw new AssertionError(kind(node));
+        }
+    }
+
+    /**
+     * Decodes the first child as an optional expression, present if the flag
+     * is set.
+     */
+    private Optional<Ast.Expression> optional(int node, boolean present) {
+        return present ? Optional.of(expression(child(node, 0))) : Optional.empty();
+    }
+
+    private List<Ast.Statement> statements(int node, int from, int to) {
+        List<Ast.Statement> statements = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            statements.add(statement(child(node, i)));
+        }
+        return statements;
+    }
+
+    private List<Ast.Expression> expressions(int node) {
+        List<Ast.Expression> expressions = new ArrayList<>(size(node));
+        for (int i = 0; i < size(node); i++) {
+            expressions.add(expression(child(node, i)));
+        }
+        return expressions;
+    }
+
+    private int source(Ast.Source ast) {
+        int mark = depth;
+        ast.getGlobals().forEach(global -> push(global(global)));
+        ast.getFunctions().forEach(function -> push(function(function)));
+        return node(Kind.SOURCE, ast.getGlobals().size(), -1, -1, mark);
+    }
+
+    private int global(Ast.Global ast) {
+        int mark = depth;
+        ast.getValue().ifPresent(value -> push(expression(value)));
+        return node(Kind.GLOBAL, add(ast.getName(), ast.getTypeName(), ast.getMutable()), bind(ast::getVariable), resolved(ast.getSlot()), mark);
+    }
+
+    private int function(Ast.Function ast) {
+        int mark = depth;
+        ast.getStatements().forEach(statement -> push(statement(statement)));
+        return node(Kind.FUNCTION, add(ast.getName(), ast.getReturnTypeName().orElse(null),
+                ast.getParameters().toArray(new String[0]), ast.getParameterTypeNames().toArray(new String[0])), bind(ast::getFunction), resolved(ast.getFrameSize()), mark);
+    }
+
+    private int statement(Ast.Statement ast) {
+        int mark = depth;
+        if (ast instanceof Ast.Statement.Expression) {
+            push(expression(((Ast.Statement.Expression) ast).getExpression()));
+            return node(Kind.EXPRESSION, 0, -1, -1, mark);
+        } else if (ast instanceof Ast.Statement.Declaration) {
+            Ast.Statement.Declaration declaration = (Ast.Statement.Declaration) ast;
+            declaration.getValue().ifPresent(value -> push(expression(value)));
+            return node(Kind.DECLARATION, add(declaration.getName(), declaration.getTypeName().orElse(null)), bind(declaration::getVariable), resolved(declaration.getSlot()), mark);
+        } else if (ast instanceof Ast.Statement.Assignment) {
+            push(expression(((Ast.Statement.Assignment) ast).getReceiver()));
+            push(expression(((Ast.Statement.Assignment) ast).getValue()));
+            return node(Kind.ASSIGNMENT, 0, -1, -1, mark);
+        } else if (ast instanceof Ast.Statement.If) {
+            Ast.Statement.If statement = (Ast.Statement.If) ast;
+            push(expression(statement.getCondition()));
+            statement.getThenStatements().forEach(then -> push(statement(then)));
+            statement.getElseStatements().forEach(els -> push(statement(els)));
+            return node(Kind.IF, statement.getThenStatements().size(), -1, -1, mark);
+        } else if (ast instanceof Ast.Statement.Switch) {
+            push(expression(((Ast.Statement.Switch) ast).getCondition()));
+            ((Ast.Statement.Switch) ast).getCases().forEach(branch -> push(statement(branch)));
+            return node(Kind.SWITCH, 0, -1, -1, mark);
+        } else if (ast instanceof Ast.Statement.Case) {
+            Ast.Statement.Case branch = (Ast.Statement.Case) ast;
+            branch.getValue().ifPresent(value -> push(expression(value)));
+            branch.getStatements().forEach(statement -> push(statement(statement)));
+            return node(Kind.CASE, branch.getValue().isPresent() ? 1 : 0, -1, -1, mark);
+        } else if (ast instanceof Ast.Statement.While) {
+            push(expression(((Ast.Statement.While) ast).getCondition()));
+            ((Ast.Statement.While) ast).getStatements().forEach(statement -> push(statement(statement)));
+            return node(Kind.WHILE, 0, -1, -1, mark);
+        } else {
+            push(expression(((Ast.Statement.Return) ast).getValue()));
+            return node(Kind.RETURN, 0, -1, -1, mark);
+        }
+    }
+
+    private int expression(Ast.Expression ast) {
+        int mark = depth;
+        if (ast instanceof Ast.Expression.Literal) {
+            return node(Kind.LITERAL, add(((Ast.Expression.Literal) ast).getLiteral()), bind(ast::getType), -1, mark);
+        } else if (ast instanceof Ast.Expression.Group) {
+            push(expression(((Ast.Expression.Group) ast).getExpression()));
+            return node(Kind.GROUP, 0, bind(ast::getType), -1, mark);
+        } else if (ast instanceof Ast.Expression.Binary) {
+            Ast.Expression.Binary binary = (Ast.Expression.Binary) ast;
+            push(expression(binary.getLeft()));
+            push(expression(binary.getRight()));
+            return node(Kind.BINARY, add(binary.getOperator()), bind(ast::getType), -1, mark);
+        } else if (ast instanceof Ast.Expression.Access) {
+            Ast.Expression.Access access = (Ast.Expression.Access) ast;
+            access.getOffset().ifPresent(offset -> push(expression(offset)));
+            return node(Kind.ACCESS, add(access.getName()), bind(access::getVariable),
+                    resolved(access.getSlot() < 0 ? -1 : 2 * access.getSlot() + access.getDepth()), mark);
+        } else if (ast instanceof Ast.Expression.Function) {
+            Ast.Expression.Function function = (Ast.Expression.Function) ast;
+            function.getArguments().forEach(argument -> push(expression(argument)));
+            return node(Kind.CALL, add(function.getName()), bind(function::getFunction), -1, mark);
+        } else {
+            ((Ast.Expression.PlcList) ast).getValues().forEach(value -> push(expression(value)));
+            return node(Kind.LIST, 0, bind(ast::getType), -1, mark);
+        }
+    }
+
+    /**
+     * Returns the pool index of the binding returned by the getter, adding
+     * it the first time it is seen, or -1 if bindings are not encoded or the
+     * analyzer left this one unset, as it does for the type of {@code NIL}.
+     */
+    private int bind(Supplier<Object> getter) {
+        if (bindings == null) {
+            return -1;
+        }
+        Object binding;
+        try {
+            binding = getter.get();
+        } catch (IllegalStateException e) {
+            return -1;
+        }
+        Integer index = bindings.get(binding);
+        if (index == null) {
+            index = add(binding);
+            bindings.put(binding, index);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the given slot if bindings are encoded, or -1.
+     */
+    private int resolved(int slot) {
+        return bindings == null ? -1 : slot;
+    }
+
+    private void push(int child) {
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, 2 * depth);
+        }
+        stack[depth++] = child;
+    }
+
+    /**
+     * Writes a node whose children are the offsets pushed since the given
+     * mark, popping them, and returns its offset.
+     */
+    private int node(Kind kind, int data, int binding, int slot, int mark) {
+        int size = depth - mark;
+        if (length + 5 + size > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(2 * arena.length, length + 5 + size));
+        }
+        int node = length;
+        arena[node] = kind.ordinal();
+        arena[node + 1] = data;
+        arena[node + 2] = binding;
+        arena[node + 3] = slot;
+        arena[node + 4] = size;
+        System.arraycopy(stack, mark, arena, node + 5, size);
+        length += 5 + size;
+        depth = mark;
+        return node;
+    }
+
+    /**
+     * Adds the given values to consecutive pool entries, returning the index
+     * of the first.
+     */
+    private int add(Object... values) {
+        if (poolSize + values.length > pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(2 * pool.length, poolSize + values.length));
+        }
+        System.arraycopy(values, 0, pool, poolSize, values.length);
+        poolSize += values.length;
+        return poolSize - values.length;
+    }
+
+    /**
+     * A list whose elements are decoded on first access.
+     */
+    private static final class Lazy<T> extends AbstractList<T> {
+
+        private final Object[] elements;
+        private final IntFunction<T> decoder;
+
+        private Lazy(int size, IntFunction<T> decoder) {
+            this.elements = new Object[size];
+            this.decoder = decoder;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(int index) {
+            Object element = elements[index];
+            if (element == null) {
+                element = decoder.apply(index);
+                elements[index] = element;
+            }
+            return (T) element;
+        }
+
+        @Override
+        public int size() {
+            return elements.length;
+        }
+
+    }
+
+    /**
+     * Traverses the nodes of the tree without allocating, keeping the path
+     * from the root to the current node.
+     */
+    public final class Cursor {
+
+        private int[] path = new int[16];
+        private int[] indices = new int[16];
+        private int level = 0;
+
+        private Cursor() {
+            path[0] = root;
+        }
+
+        public int node() {
+            return path[level];
+        }
+
+        public Kind kind() {
+            return FlatAst.this.kind(node());
+        }
+
+        public int data() {
+            return FlatAst.this.data(node());
+        }
+
+        public int size() {
+            return FlatAst.this.size(node());
+        }
+
+        /**
+         * Returns the pool entry at the data of the current node plus the
+         * given offset.
+         */
+        public Object pool(int offset) {
+            return FlatAst.this.pool(data() + offset);
+        }
+
+        /**
+         * Moves to the child at the given index.
+         */
+        public Cursor down(int index) {
+            int child = child(node(), index);
+            if (++level == path.length) {
+                path = Arrays.copyOf(path, 2 * level);
+                indices = Arrays.copyOf(indices, 2 * level);
+            }
+            path[level] = child;
+            indices[level] = index;
+            return this;
+        }
+
+        /**
+         * Moves to the parent, returning false if already at the root.
+         */
+        public boolean up() {
+            if (level == 0) {
+                return false;
+            }
+            level--;
+            return true;
+        }
+
+        /**
+         * Moves to the next sibling, returning false if there is none.
+         */
+        public boolean next() {
+            if (level == 0) {
+                return false;
+            }
+            int parent = path[level - 1];
+            if (indices[level] + 1 == FlatAst.this.size(parent)) {
+                return false;
+            }
+            path[level] = child(parent, ++indices[level]);
+            return true;
+        }
+
+    }
+
+}
@@ -1,6 +1,7 @@
 package plc.project;
 
 import java.io.PrintWriter;
+import java.math.BigDecimal;
 
 public final class Generator implements Ast.Visitor<Void> {
 
@@ -328,7 +329,23 @@ public final class Generator implements Ast.Visitor<Void> {
     public Void visit(Ast.Expression.PlcList ast) {
         print("{");
 
-        if (ast.getValues().size() > 0){
+        if (ast.getIntegers() != null){
+            long[] integers = ast.getIntegers();
+            for (int i = 0; i < integers.length; i++){
+                if (i > 0){
+                    writer.write(", ");
+                }
+                writer.print(integers[i]);
+            }
+        } else if (ast.getDecimals() != null){
+            double[] decimals = ast.getDecimals();
+            for (int i = 0; i < decimals.length; i++){
+                if (i > 0){
+                    writer.write(", ");
+                }
+                writer.write(BigDecimal.valueOf(decimals[i]).toString());
+            }
+        } else if (ast.getValues().size() > 0){
             for (int i = 0; i < ast.getValues().size()-1; i++){
                 print(ast.getValues().get(i));
                 print(", ");
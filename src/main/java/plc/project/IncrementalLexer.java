@@ -0,0 +1,99 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Updates a token list after an edit to its source without lexing the whole
+ * source again.
+ *
+ * Lexing only starts after the last token which cannot have been affected by
+ * the edit, and stops as soon as a new token starts at the (shifted) index of
+ * a token after the edit. Since lexing from the start of a token does not
+ * depend on anything before it, the remaining tokens are the same as before
+ * and are only shifted.
+ *
+ * Every reused token is rebased onto the new source, so the tokens never keep
+ * an earlier version of the source reachable.
+ */
+public final class IncrementalLexer {
+
+    /**
+     * The number of characters past the end of a token the lexer may inspect
+     * when lexing it, as in {@code -0.5} being checked from {@code -}.
+     */
+    private static final int LOOKAHEAD = 3;
+
+    private IncrementalLexer() {}
+
+    /**
+     * Returns the tokens of {@code source}, which is the source of the
+     * previous tokens with the {@code removed} characters at {@code offset}
+     * replaced by {@code inserted}.
+     */
+    public static List<Token> relex(List<Token> previous, String source, int offset, int removed, String inserted) {
+        List<Token> result = new ArrayList<>(previous.size() + Math.max(inserted.length() - removed, 0));
+        relex(previous, source, offset, removed, inserted, result);
+        return result;
+    }
+
+    /**
+     * Relexes as in {@link #relex(List, String, int, int, String)}, adding the
+     * tokens to the result. Returns the position of the first token in the
+     * result which is a previous token shifted past the edit, or the size of
+     * the result if lexing never caught up with the previous tokens.
+     */
+    static int relex(List<Token> previous, String source, int offset, int removed, String inserted, List<Token> result) {
+        int delta = inserted.length() - removed;
+        int first = firstAffected(previous, offset);
+        int restart = first == 0 ? 0 : end(previous.get(first - 1));
+
+        for (Token token : previous.subList(0, first)) {
+            result.add(token.rebase(source, token.getIndex()));
+        }
+
+        int next = first;
+        Lexer lexer = new Lexer(source, restart);
+        while (lexer.hasNext()) {
+            Token token = lexer.next();
+            if (token.getIndex() >= offset + inserted.length()) {
+                while (next < previous.size() && previous.get(next).getIndex() + delta < token.getIndex()) {
+                    next++;
+                }
+                if (next < previous.size() && previous.get(next).getIndex() >= offset + removed
+                        && previous.get(next).getIndex() + delta == token.getIndex()) {
+                    int resync = result.size();
+                    for (Token shifted : previous.subList(next, previous.size())) {
+                        result.add(shifted.rebase(source, shifted.getIndex() + delta));
+                    }
+                    return resync;
+                }
+            }
+            result.add(token);
+        }
+        return result.size();
+    }
+
+    /**
+     * Returns the position of the first token whose lexing may have inspected
+     * a character at or after the offset.
+     */
+    static int firstAffected(List<Token> tokens, int offset) {
+        int low = 0;
+        int high = tokens.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (end(tokens.get(mid)) + LOOKAHEAD <= offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int end(Token token) {
+        return token.getIndex() + token.getLength();
+    }
+
+}
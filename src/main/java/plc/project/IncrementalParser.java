@@ -0,0 +1,136 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the tokens and AST of a source up to date across edits, reparsing
+ * only the globals and functions the edit may have changed.
+ *
+ * Top-level items are parsed independently of each other, so an item whose
+ * tokens are all unchanged by the edit parses to the same node. Items before
+ * the tokens relexed by {@link IncrementalLexer} are kept as they are, while
+ * items after the edit are reused once reparsing reaches the start of one of
+ * them in the part of the tokens which are only shifted. Since the AST does
+ * not hold any positions, reused nodes need no updating.
+ */
+public final class IncrementalParser {
+
+    private String source;
+    private List<Token> tokens;
+    private Ast.Source ast;
+
+    /**
+     * The globals and functions in source order, and the position of the
+     * first token of each. Every item ends where the next one starts.
+     */
+    private List<Ast> items;
+    private int[] starts = new int[0];
+
+    public IncrementalParser(String source) throws ParseException {
+        this.source = source;
+        this.tokens = new Lexer(source).lex();
+        this.items = new ArrayList<>();
+        List<Integer> starts = new ArrayList<>();
+        parse(tokens, 0, items, starts, tokens.size(), 0);
+        this.starts = starts.stream().mapToInt(Integer::intValue).toArray();
+        this.ast = Parser.source(items);
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public List<Token> getTokens() {
+        return tokens;
+    }
+
+    public Ast.Source getAst() {
+        return ast;
+    }
+
+    /**
+     * Replaces the {@code removed} characters at {@code offset} with
+     * {@code inserted}, returning the AST of the edited source. If the edited
+     * source fails to lex or parse, the exception is thrown and the state is
+     * left as it was before the edit.
+     */
+    public Ast.Source edit(int offset, int removed, String inserted) throws ParseException {
+        String edited = source.substring(0, offset) + inserted + source.substring(offset + removed);
+        List<Token> relexed = new ArrayList<>(tokens.size() + Math.max(inserted.length() - removed, 0));
+        int resync = IncrementalLexer.relex(tokens, edited, offset, removed, inserted, relexed);
+        int first = firstAffected(IncrementalLexer.firstAffected(tokens, offset));
+
+        List<Ast> items = new ArrayList<>(this.items.subList(0, first));
+        List<Integer> parsed = new ArrayList<>();
+        int start = first < this.items.size() ? this.starts[first] : tokens.size();
+        int reused = parse(relexed, start, items, parsed, resync, first);
+
+        int shift = relexed.size() - tokens.size();
+        int[] starts = new int[first + parsed.size() + this.items.size() - reused];
+        System.arraycopy(this.starts, 0, starts, 0, first);
+        for (int i = 0; i < parsed.size(); i++) {
+            starts[first + i] = parsed.get(i);
+        }
+        for (int i = reused; i < this.items.size(); i++) {
+            starts[first + parsed.size() + i - reused] = this.starts[i] + shift;
+        }
+        items.addAll(this.items.subList(reused, this.items.size()));
+
+        this.source = edited;
+        this.tokens = relexed;
+        this.items = items;
+        this.starts = starts;
+        this.ast = Parser.source(items);
+        return ast;
+    }
+
+    /**
+     * Parses items from the token at {@code start} of the edited tokens,
+     * adding them and their starts. The parser sees all of the edited tokens,
+     * so errors have the same indices as when parsing the whole source. Parsing stops at the end of the tokens,
+     * or once at or past {@code resync}, where the edited tokens are only the
+     * previous ones shifted, at the start of a previous item from
+     * {@code first} on. Returns the previous item it stopped at, or the
+     * number of previous items.
+     */
+    private int parse(List<Token> edited, int start, List<Ast> items, List<Integer> starts, int resync, int first) {
+        Parser parser = new Parser(edited, start);
+        int shift = edited.size() - tokens.size();
+        int previous = first;
+        while (parser.position() < edited.size()) {
+            int position = parser.position();
+            if (position >= resync) {
+                while (previous < this.starts.length && this.starts[previous] + shift < position) {
+                    previous++;
+                }
+                if (previous < this.starts.length && this.starts[previous] + shift == position) {
+                    return previous;
+                }
+            }
+            starts.add(position);
+            items.add(parser.parseTopLevel());
+        }
+        return this.starts.length;
+    }
+
+    /**
+     * Returns the first item which does not end before the given token, and
+     * so may have changed.
+     */
+    private int firstAffected(int token) {
+        int low = 0;
+        int high = items.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int end = mid + 1 < starts.length ? starts[mid + 1] : tokens.size();
+            if (end <= token) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+}
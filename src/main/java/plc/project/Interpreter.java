@@ -9,6 +9,18 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     private Scope scope = new Scope(null);
 
+    /**
+     * The variables of the function being called, by the slots resolved by
+     * the {@link Analyzer}, or null outside a resolved function, in which
+     * case variables are defined in and looked up through the scope.
+     */
+    private Environment.PlcObject[] frame = null;
+
+    /**
+     * The globals defined so far, by their resolved slots.
+     */
+    private final List<Environment.Variable> globals = new ArrayList<>();
+
     public Interpreter(Scope parent) {
         scope = new Scope(parent);
         scope.defineFunction("print", 1, args -> {
@@ -44,13 +56,25 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         } else {
             scope.defineVariable(ast.getName(), true, Environment.NIL);
         }
+        if (ast.getSlot() >= 0) {
+            while (globals.size() <= ast.getSlot()) {
+                globals.add(null);
+            }
+            globals.set(ast.getSlot(), scope.lookupVariable(ast.getName()));
+        }
         return Environment.NIL;
     }
 
     @Override
     public Environment.PlcObject visit(Ast.Function ast) {
+        if (ast.getFrameSize() >= 0) {
+            scope.defineFunction(ast.getName(), ast.getParameters().size(), arguments -> call(ast, arguments));
+            return Environment.NIL;
+        }
         scope.defineFunction(ast.getName(), ast.getParameters().size(), arguments ->
         {
+            Environment.PlcObject[] caller = frame;
+            frame = null;
             try {
                 scope = new Scope(scope);
                 for (int i = 0; i < arguments.size(); i++) {
@@ -63,12 +87,36 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                 return exception.value;
             } finally {
                 scope = scope.getParent();
+                frame = caller;
             }
             return Environment.NIL;
         });
         return Environment.NIL;
     }
 
+    /**
+     * Calls a function whose variables were resolved, with its arguments in
+     * the first slots of a new frame. Its blocks need no scopes of their own,
+     * as none of its variables are defined in a scope.
+     */
+    private Environment.PlcObject call(Ast.Function ast, List<Environment.PlcObject> arguments) {
+        Environment.PlcObject[] caller = frame;
+        try {
+            frame = new Environment.PlcObject[ast.getFrameSize()];
+            for (int i = 0; i < arguments.size(); i++) {
+                frame[i] = arguments.get(i);
+            }
+            for (int i = 0; i < ast.getStatements().size(); i++) {
+                visit(ast.getStatements().get(i));
+            }
+        } catch (Return exception) {
+            return exception.value;
+        } finally {
+            frame = caller;
+        }
+        return Environment.NIL;
+    }
+
 
 
 
@@ -80,7 +128,11 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     @Override
     public Environment.PlcObject visit(Ast.Statement.Declaration ast) {
-        if (ast.getValue().isPresent())
+        if (frame != null && ast.getSlot() >= 0)
+        {
+            frame[ast.getSlot()] = ast.getValue().isPresent() ? visit(ast.getValue().get()) : Environment.NIL;
+        }
+        else if (ast.getValue().isPresent())
         {
             Ast.Expression exp = ast.getValue().get();
             scope.defineVariable(ast.getName(), true, visit(exp));
@@ -102,7 +154,7 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                     Object offset = visit(((Ast.Expression.Access)receiver).getOffset().get()).getValue();
 
                     if (offset.getClass().equals(BigInteger.class)) {
-                        Object list = scope.lookupVariable(((Ast.Expression.Access) receiver).getName()).getValue().getValue();
+                        Object list = lookup((Ast.Expression.Access) receiver).getValue();
 
                         if (list instanceof List){
                             ((List<BigInteger>) list).set(((BigInteger) offset).intValue(), (BigInteger) visit(ast.getValue()).getValue());
@@ -114,7 +166,7 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
 
                 }
-                scope.lookupVariable(((Ast.Expression.Access) receiver).getName()).setValue(visit(ast.getValue()));
+                assign((Ast.Expression.Access) receiver, ast.getValue());
             }
         } else{
             throw new RuntimeException();
@@ -126,7 +178,7 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     public Environment.PlcObject visit(Ast.Statement.If ast) {
         if (requireType(Boolean.class, visit(ast.getCondition())) || !requireType(Boolean.class, visit(ast.getCondition()))){
             try {
-                scope = new Scope(scope);
+                enterBlock();
                 Ast.Expression condition = ast.getCondition();
                 if ((Boolean)visit(condition).getValue() == true){
                     for (int i = 0; i < ast.getThenStatements().size(); i++){
@@ -139,7 +191,7 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                 }
 
             } finally {
-                scope = scope.getParent();
+                exitBlock();
             }
         }
 
@@ -160,11 +212,11 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     @Override
     public Environment.PlcObject visit(Ast.Statement.Case ast) {
-        scope = new Scope(scope);
+        enterBlock();
         for (int i = 0; i < ast.getStatements().size(); i++){
             visit(ast.getStatements().get(i));
         }
-        scope = scope.getParent();
+        exitBlock();
         return Environment.NIL;
     }
 
@@ -174,12 +226,12 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         {
             try
             {
-                scope = new Scope(scope);
+                enterBlock();
                 ast.getStatements().forEach(this::visit);
             }
             finally
             {
-                scope = scope.getParent();
+                exitBlock();
             }
         }
         return Environment.NIL;
@@ -436,13 +488,67 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                 throw new RuntimeException();
                 //throw exception
             }
-            Object astVal = scope.lookupVariable(ast.getName()).getValue().getValue();
+            Object astVal = lookup(ast).getValue();
             if (astVal instanceof List)
             {
                 return Environment.create(((List<?>) astVal).get(Integer.parseInt(offset.toString())));
             }
         }
-        return scope.lookupVariable(ast.getName()).getValue();
+        return lookup(ast);
+    }
+
+    /**
+     * Returns the value of the accessed variable, from its slot if it was
+     * resolved and otherwise by name through the scope.
+     */
+    private Environment.PlcObject lookup(Ast.Expression.Access ast) {
+        if (frame != null && ast.getDepth() == 0) {
+            Environment.PlcObject value = frame[ast.getSlot()];
+            if (value == null) {
+                throw new RuntimeException("The variable " + ast.getName() + " is not defined in this scope.");
+            }
+            return value;
+        }
+        return variable(ast).getValue();
+    }
+
+    /**
+     * Assigns the value to the accessed variable, which is looked up before
+     * the value is evaluated.
+     */
+    private void assign(Ast.Expression.Access ast, Ast.Expression value) {
+        if (frame != null && ast.getDepth() == 0) {
+            lookup(ast);
+            frame[ast.getSlot()] = visit(value);
+        } else {
+            variable(ast).setValue(visit(value));
+        }
+    }
+
+    /**
+     * Returns the accessed variable if it is not in the frame, by its slot
+     * if it is a global defined by this interpreter.
+     */
+    private Environment.Variable variable(Ast.Expression.Access ast) {
+        if (frame != null && ast.getDepth() == 1 && ast.getSlot() < globals.size() && globals.get(ast.getSlot()) != null) {
+            return globals.get(ast.getSlot());
+        }
+        return scope.lookupVariable(ast.getName());
+    }
+
+    /**
+     * Enters a block in a new scope, unless in a resolved function.
+     */
+    private void enterBlock() {
+        if (frame == null) {
+            scope = new Scope(scope);
+        }
+    }
+
+    private void exitBlock() {
+        if (frame == null) {
+            scope = scope.getParent();
+        }
     }
 
     @Override
@@ -460,6 +566,10 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     @Override
     public Environment.PlcObject visit(Ast.Expression.PlcList ast) {
+        if (ast.isPacked())
+        {
+            return Environment.create(new PackedList(ast));
+        }
         List<Ast.Expression> values = ast.getValues();
         ArrayList<Object> newList = new ArrayList<>();
 
@@ -483,6 +593,59 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         }
     }
 
+    /**
+     * The value of a packed list, holding a copy of its array so elements can
+     * be read and assigned without boxing the others. Its elements are the
+     * values of the literals it was packed from. Assigning a value which the
+     * array cannot hold boxes every element once and stores them as objects
+     * from then on.
+     */
+    private static final class PackedList extends AbstractList<Object> implements RandomAccess {
+
+        private final long[] integers;
+        private final double[] decimals;
+        private Object[] boxed;
+
+        private PackedList(Ast.Expression.PlcList ast) {
+            this.integers = ast.getIntegers() != null ? ast.getIntegers().clone() : null;
+            this.decimals = ast.getDecimals() != null ? ast.getDecimals().clone() : null;
+        }
+
+        @Override
+        public Object get(int index) {
+            if (boxed != null) {
+                return boxed[index];
+            } else if (integers != null) {
+                return BigInteger.valueOf(integers[index]);
+            }
+            return BigDecimal.valueOf(decimals[index]);
+        }
+
+        @Override
+        public Object set(int index, Object value) {
+            Object previous = get(index);
+            if (boxed == null && integers != null && value instanceof BigInteger
+                    && ((BigInteger) value).bitLength() < Long.SIZE) {
+                integers[index] = ((BigInteger) value).longValue();
+            } else if (boxed == null && decimals != null && value instanceof BigDecimal
+                    && BigDecimal.valueOf(((BigDecimal) value).doubleValue()).equals(value)) {
+                decimals[index] = ((BigDecimal) value).doubleValue();
+            } else {
+                if (boxed == null) {
+                    boxed = toArray();
+                }
+                boxed[index] = value;
+            }
+            return previous;
+        }
+
+        @Override
+        public int size() {
+            return integers != null ? integers.length : decimals.length;
+        }
+
+    }
+
     /**
      * Exception class for returning values.
      */
@@ -1,7 +1,17 @@
 package plc.project;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * The lexer works through three main functions:
@@ -14,15 +24,109 @@ import java.util.List;
  * should throw a {@link ParseException} with an index at the character which is
  * invalid.
  *
- * The {@link #peek(String...)} and {@link #match(String...)} functions are * helpers you need to use, they will make the implementation a lot easier. */
-public final class Lexer {
+ * Characters are classified through the precomputed {@link #CLASSES} table
+ * instead of regular expressions, and each lex method is a small state machine
+ * over those classes. The {@link #peek(String...)} and {@link
+ * #match(String...)} regex helpers are kept for callers outside the lexer.
+ *
+ * Literal values are decoded while scanning and attached to the tokens, see
+ * {@link Token#getValue()}.
+ *
+ * The lexer is also an {@link Iterator} over its tokens, which lexes lazily.
+ * Combined with {@link #Lexer(Reader)} this lets the {@link Parser} consume
+ * input of any size without materializing the source or the token list.
+ * {@link Utf8Lexer} shares this scanning over UTF-8 bytes, through a {@link
+ * CharStream} decoding them on the fly.
+ */
+public final class Lexer implements Iterator<Token> {
+
+    static final int WHITESPACE = 1;
+    static final int IDENTIFIER_START = 2;
+    static final int IDENTIFIER_LEADING = 4;
+    static final int IDENTIFIER_PART = 8;
+    static final int DIGIT = 16;
+    static final int ESCAPE = 32;
+    static final int STRING_PART = 64;
+
+    /**
+     * Character class bits for every ASCII character, indexed by the char
+     * value. Non-ASCII characters belong to no class.
+     */
+    static final byte[] CLASSES = new byte[128];
+
+    static {
+        for (char c : " \b\n\r\t".toCharArray()) {
+            CLASSES[c] |= WHITESPACE;
+        }
+        for (char c = 'A'; c <= 'z'; c++) {
+            CLASSES[c] |= IDENTIFIER_LEADING;
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            CLASSES[c] |= IDENTIFIER_START | IDENTIFIER_PART;
+            CLASSES[Character.toLowerCase(c)] |= IDENTIFIER_START | IDENTIFIER_PART;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            CLASSES[c] |= DIGIT | IDENTIFIER_PART;
+        }
+        for (char c : "brnt'\"\\".toCharArray()) {
+            CLASSES[c] |= ESCAPE;
+        }
+        for (char c = 0; c < 128; c++) {
+            if (c != '"' && c != '\n' && c != '\r' && c != '\\') {
+                CLASSES[c] |= STRING_PART;
+            }
+        }
+        CLASSES['@'] |= IDENTIFIER_START | IDENTIFIER_LEADING;
+        CLASSES['_'] |= IDENTIFIER_LEADING | IDENTIFIER_PART;
+        CLASSES['-'] |= IDENTIFIER_LEADING | IDENTIFIER_PART;
+    }
 
     private final CharStream chars;
 
+    /**
+     * The value of the literal scanned last, and whether to decode it at all.
+     */
+    private Object value;
+    private boolean decode = true;
+
     public Lexer(String input) {
         chars = new CharStream(input);
     }
 
+    /**
+     * Creates a lexer starting at the given index of the input, which must be
+     * outside of any token. Token indices are still relative to the input.
+     */
+    Lexer(String input, int start) {
+        this(input, start, input.length());
+    }
+
+    /**
+     * Creates a lexer over the characters of the input between start and end,
+     * which must both be outside of any token.
+     */
+    Lexer(String input, int start, int end) {
+        chars = new CharStream(input);
+        chars.index = start;
+        chars.limit = end;
+    }
+
+    /**
+     * Creates a lexer reading from the given reader, which only buffers the
+     * characters of the token currently being lexed.
+     */
+    public Lexer(Reader reader) {
+        chars = new CharStream(reader);
+    }
+
+    /**
+     * Creates a lexer over the given char stream, whose indices are used for
+     * tokens as they are.
+     */
+    Lexer(CharStream chars) {
+        this.chars = chars;
+    }
+
     /**
      * Repeatedly lexes the input using {@link #lexToken()}, also skipping over
      * whitespace where appropriate.
@@ -30,19 +134,34 @@ public final class Lexer {
     public List<Token> lex() {
         List<Token> result = new ArrayList<>();
 
-        while (chars.has(0)){
-            if (!peek("[ \b\n\r\t]")){
-                result.add(lexToken());
-            } else {
-                match("[ \b\n\r\t]");
-                chars.skip();
-            }
-
+        while (hasNext()) {
+            result.add(lexToken());
         }
 
         return result;
     }
 
+    /**
+     * Skips any whitespace and returns true if another token follows.
+     */
+    @Override
+    public boolean hasNext() {
+        chars.advanceWhile(WHITESPACE);
+        chars.skip();
+        return chars.has(0);
+    }
+
+    /**
+     * Lexes the next token, as in {@link #lex()}.
+     */
+    @Override
+    public Token next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return lexToken();
+    }
+
     /**
      * This method determines the type of the next token, delegating to the
      * appropriate lex method. As such, it is best for this method to not change
@@ -52,102 +171,266 @@ public final class Lexer {
      * by {@link #lex()}
      */
     public Token lexToken() {
-
-        if (peek("(@|[A-Za-z])")){
-            return lexIdentifier();
-        }
-        else if (peek("[0-9]") || peek("-", "[1-9]")
-        || peek("-", "0", "\\.", "[0-9]")){
-            return lexNumber();
-        }
-        else if (peek("'")){
-            return lexCharacter();
-        } else if (peek("\"")){
-            return lexString();
-        }
-        else {
-            return lexOperator();
-        }
-    } //this is the scan method
+        return emit(scanToken());
+    }
 
     public Token lexIdentifier() {
-        match("(@|[A-za-z_-])");
-        while (chars.has(0) && match("[A-Za-z0-9_-]"));
-        return chars.emit(Token.Type.IDENTIFIER);
+        return emit(scanIdentifier());
     }
 
     public Token lexNumber() {
+        return emit(scanNumber());
+    }
+
+    public Token lexCharacter() {
+        return emit(scanCharacter());
+    }
 
-        if (peek("0", "[0-9]")) return chars.emit(Token.Type.INTEGER);
-        match("-");
-        match("[0-9]");
+    public Token lexString() {
+        return emit(scanString());
+    }
 
-        while(chars.has(0) && match("[0-9]"));
+    public void lexEscape() {
+        scanEscape();
+    }
 
-        if (chars.has(1) && peek("\\.", "[0-9]"))
-        {   //check decimal regex
-            match("\\.");
+    public Token lexOperator() {
+        return emit(scanOperator());
+    }
 
-            while (chars.has(0) && match("[0-9]"));
-            return chars.emit(Token.Type.DECIMAL);
+    /**
+     * Lexes the whole input into the given buffer without creating any
+     * {@link Token} objects.
+     */
+    void lex(TokenBuffer buffer) {
+        while (hasNext()) {
+            int start = index();
+            Token.Type type = scan();
+            buffer.add(type, start, index() - start);
         }
-        return chars.emit(Token.Type.INTEGER);
+    }
 
+    /**
+     * Scans the next token without creating a {@link Token} or decoding its
+     * value, returning its type. The token spans from {@link #index()} before
+     * the call to the index after it, and {@link #hasNext()} must have been
+     * true.
+     */
+    Token.Type scan() {
+        decode = false;
+        Token.Type type = scanToken();
+        chars.skip();
+        return type;
     }
 
-    public Token lexCharacter() {
-        match("'");
-        if (peek("[^'\n\r]") || peek("\\\\")){
-            if (peek("\\\\")){
-                lexEscape();
-            }
-            else {
-                match("[^'\n\r]");
-            }
+    /**
+     * Returns the index of the next character in the input.
+     */
+    int index() {
+        return chars.index;
+    }
 
-            if (!match("'")){
-                throw new ParseException("Invalid character", chars.index);
-            }
+    private Token emit(Token.Type type) {
+        Token token = chars.emit(type, value);
+        value = null;
+        return token;
+    }
+
+    /**
+     * The scan methods advance the char stream over the next token and
+     * return its type, leaving emitting the token to the caller. Literals
+     * also leave their decoded value in {@link #value}.
+     */
+    private Token.Type scanToken() {
+        if (!chars.has(0)) {
+            return scanOperator();
+        }
+        char c = chars.get(0);
+        if (is(c, IDENTIFIER_START)) {
+            return scanIdentifier();
+        } else if (is(c, DIGIT) || c == '-' && (peek(1, '1', '9')
+                || peek(1, '0', '0') && peek(2, '.', '.') && peek(3, DIGIT))) {
+            return scanNumber();
+        } else if (c == '\'') {
+            return scanCharacter();
+        } else if (c == '"') {
+            return scanString();
         } else {
-            throw new ParseException("Missing character", chars.index);
+            return scanOperator();
         }
-        return chars.emit(Token.Type.CHARACTER);
-
     }
 
-    public Token lexString() {
-        match("\"");
+    private Token.Type scanIdentifier() {
+        if (peek(0, IDENTIFIER_LEADING)) {
+            chars.advance();
+        }
+        chars.advanceWhile(IDENTIFIER_PART);
+        return Token.Type.IDENTIFIER;
+    }
 
-        while (chars.has(0) &&
-                (peek("[^\"\n\r\\\\]") || peek("\\\\"))) {
-            if (peek("\\\\")){
-                lexEscape();
+    private Token.Type scanNumber() {
+        if (peek(0, '0', '0') && peek(1, DIGIT)) {
+            return Token.Type.INTEGER;
+        }
+        boolean negative = peek(0, '-', '-');
+        if (negative) {
+            chars.advance();
+        }
+        int digits = chars.index;
+        long unscaled = 0;
+        while (peek(0, DIGIT)) {
+            unscaled = 10 * unscaled + chars.get(0) - '0';
+            chars.advance();
+        }
+        int scale = 0;
+        Token.Type type = Token.Type.INTEGER;
+        if (peek(0, '.', '.') && peek(1, DIGIT)) {
+            chars.advance();
+            int fraction = chars.index;
+            while (peek(0, DIGIT)) {
+                unscaled = 10 * unscaled + chars.get(0) - '0';
+                chars.advance();
             }
-            match("[^\"\n\r\\\\]");
+            scale = chars.index - fraction;
+            type = Token.Type.DECIMAL;
         }
-        if (!match("\"")){
-            throw new ParseException("Unterminated String", chars.index);
+        // Up to 18 digits always fit in a long, longer numbers are left to
+        // Token#getValue() to decode from the literal.
+        if (decode && chars.index - digits - (scale > 0 ? 1 : 0) <= 18) {
+            long signed = negative ? -unscaled : unscaled;
+            value = scale > 0 ? BigDecimal.valueOf(signed, scale) : BigInteger.valueOf(signed);
         }
+        return type;
+    }
 
-        return chars.emit(Token.Type.STRING);
+    private Token.Type scanCharacter() {
+        if (peek(0, '\'', '\'')) {
+            chars.advance();
+        }
+        if (!chars.has(0) || chars.get(0) == '\'' || chars.get(0) == '\n' || chars.get(0) == '\r') {
+            throw new ParseException("Missing character", chars.charIndex(chars.index));
+        }
+        char c = chars.get(0);
+        if (c == '\\') {
+            c = scanEscape();
+        } else {
+            chars.advance();
+        }
+        if (!peek(0, '\'', '\'')) {
+            throw new ParseException("Invalid character", chars.charIndex(chars.index));
+        }
+        chars.advance();
+        if (decode) {
+            value = c;
+        }
+        return Token.Type.CHARACTER;
+    }
 
+    private Token.Type scanString() {
+        if (peek(0, '"', '"')) {
+            chars.advance();
+        }
+        // Content up to an escape is appended in runs, starting at run.
+        int run = chars.index;
+        StringBuilder builder = null;
+        while (chars.advanceWhile(STRING_PART) || chars.has(0)) {
+            char c = chars.get(0);
+            if (c == '"' || c == '\n' || c == '\r') {
+                break;
+            } else if (c == '\\' && decode) {
+                if (builder == null) {
+                    builder = new StringBuilder();
+                }
+                chars.appendTo(builder, run);
+                builder.append(scanEscape());
+                run = chars.index;
+            } else if (c == '\\') {
+                scanEscape();
+            } else {
+                chars.advance();
+            }
+        }
+        if (!peek(0, '"', '"')) {
+            throw new ParseException("Unterminated String", chars.charIndex(chars.index));
+        }
+        if (decode && builder == null) {
+            value = chars.substring(run);
+        } else if (decode) {
+            chars.appendTo(builder, run);
+            value = builder.toString();
+        }
+        chars.advance();
+        return Token.Type.STRING;
     }
 
-    public void lexEscape() {
-        match("\\\\");
-        if (!match("[brnt'\"\\\\]")){
-            throw new ParseException("Invalid Escape", chars.index);
+    private Token.Type scanOperator() {
+        if (chars.has(1) && chars.get(1) == '=' && (chars.get(0) == '=' || chars.get(0) == '!')
+                || chars.has(1) && chars.get(0) == '&' && chars.get(1) == '&'
+                || chars.has(1) && chars.get(0) == '|' && chars.get(1) == '|') {
+            chars.advance();
+            chars.advance();
+        } else if (chars.has(0) && !isLineTerminator(chars.get(0))) {
+            chars.advance();
         }
+        return Token.Type.OPERATOR;
+    }
 
+    /**
+     * Advances over an escape sequence, returning the character it stands for.
+     */
+    private char scanEscape() {
+        if (peek(0, '\\', '\\')) {
+            chars.advance();
+        }
+        if (!peek(0, ESCAPE)) {
+            throw new ParseException("Invalid Escape", chars.charIndex(chars.index));
+        }
+        char c = unescape(chars.get(0));
+        chars.advance();
+        return c;
     }
 
-    public Token lexOperator() {
-        if (match("=", "=") || match("!", "=")
-                || match("&", "&") || match("|", "|")){
-            return chars.emit(Token.Type.OPERATOR);
+    /**
+     * Returns the character represented by the escape sequence of a backslash
+     * followed by the given character.
+     */
+    static char unescape(char c) {
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            default:
+                return c;
         }
-        match(".");
-        return chars.emit(Token.Type.OPERATOR);
+    }
+
+    /**
+     * Returns true if the given character belongs to any of the classes in the
+     * mask.
+     */
+    static boolean is(char c, int mask) {
+        return c < 128 && (CLASSES[c] & mask) != 0;
+    }
+
+    /**
+     * Returns true for the characters the regex {@code .} does not match,
+     * which are never consumed as single character operators.
+     */
+    static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    private boolean peek(int offset, int mask) {
+        return chars.has(offset) && is(chars.get(offset), mask);
+    }
+
+    private boolean peek(int offset, char low, char high) {
+        return chars.has(offset) && chars.get(offset) >= low && chars.get(offset) <= high;
     }
 
     /**
@@ -187,41 +470,357 @@ public final class Lexer {
      * You should rely on peek/match for state management in nearly all cases.
      * The only field you need to access is index for any {@link
      * ParseException} which is thrown.
+     *
+     * When created from a {@link Reader}, characters are read into a buffer
+     * on demand. Characters before the current token are discarded whenever
+     * the buffer is refilled, so it only grows for tokens longer than it.
+     *
+     * When created from UTF-8 bytes, indices are byte offsets and multi-byte
+     * characters are decoded as they are read. A supplementary character is
+     * read as two chars, the second at the byte offset of the character plus
+     * one. {@link #charIndex(int)} maps byte offsets back to char offsets.
      */
     public static final class CharStream {
 
+        private static final int CAPACITY = 8192;
+
         private final String input;
+        private Reader reader;
+        private char[] buffer;
+        private int base = 0;
+        private int limit;
         private int index = 0;
         private int length = 0;
 
+        /**
+         * The UTF-8 input with a view of it as ASCII characters, and the byte
+         * offsets just past every multi-byte character read so far with the
+         * difference between byte and char offsets from there on.
+         */
+        private final ByteBuffer bytes;
+        private Ascii ascii;
+        private int[] positions;
+        private int[] deltas;
+        private int checkpoints = 0;
+
         public CharStream(String input) {
             this.input = input;
+            this.bytes = null;
+            this.limit = input.length();
+        }
+
+        public CharStream(Reader reader) {
+            this.input = null;
+            this.bytes = null;
+            this.reader = reader;
+            this.buffer = new char[CAPACITY];
+            this.limit = 0;
+        }
+
+        /**
+         * Creates a stream over the UTF-8 encoded bytes between the position
+         * and the limit of the buffer, which is not modified. Indices are
+         * relative to the position.
+         */
+        public CharStream(ByteBuffer bytes) {
+            this.input = null;
+            this.bytes = bytes.slice();
+            this.limit = this.bytes.limit();
+            this.ascii = new Ascii(this.bytes, 0, limit);
+            this.positions = new int[16];
+            this.deltas = new int[16];
         }
 
         public boolean has(int offset) {
-            return index + offset < input.length();
+            return index + offset < limit && (bytes == null || offset == 0 || position(offset) < limit) || fill(offset);
         } //this is like atEnd(), ensures we are not at end
 
         public char get(int offset) {
-            return input.charAt(index + offset);
+            if (input != null) {
+                return input.charAt(index + offset);
+            }
+            return bytes != null ? decode(position(offset)) : buffer[index - base + offset];
         }  //this is how we access chars, offset allow us to see the peek + 1 or + 2
 
         public void advance() {
+            if (bytes != null && bytes.get(index) < 0) {
+                int next = next(index);
+                if (next - index > 1) {
+                    checkpoint(next, next - index - 1);
+                }
+                length += next - index;
+                index = next;
+                return;
+            }
             index++;
             length++;
         }
 
+        /**
+         * Advances over the run of ASCII characters belonging to any of the
+         * classes in the mask, returning true if it stopped at a character
+         * (rather than the end of the input).
+         *
+         * This scans the input directly instead of going through {@link
+         * #has(int)} and {@link #get(int)} for every character, which is
+         * where most of the lexing time goes for whitespace, identifiers and
+         * numbers. Lexers fall back to single characters at the end of a run.
+         */
+        public boolean advanceWhile(int mask) {
+            if (input != null) {
+                int start = index;
+                while (index < limit && is(input.charAt(index), mask)) {
+                    index++;
+                }
+                length += index - start;
+            } else if (bytes != null) {
+                int start = index;
+                while (index < limit && is((char) bytes.get(index), mask)) {
+                    index++;
+                }
+                length += index - start;
+            } else {
+                while (has(0) && is(buffer[index - base], mask)) {
+                    index++;
+                    length++;
+                }
+            }
+            return index < limit;
+        }
+
         public void skip() {
             length = 0;
         }
 
         public Token emit(Token.Type type) {
+            return emit(type, null);
+        }
+
+        /**
+         * Emits the current token with an already decoded value, see {@link
+         * Token#getValue()}.
+         */
+        public Token emit(Token.Type type, Object value) {
             int start = index - length;
             skip();
-            return new Token(type, input.substring(start, index), start);
+            if (input != null) {
+                return new Token(type, input, start, index - start, value);
+            } else if (bytes != null) {
+                return ascii.is(start, index) ? new Token(type, ascii, start, index - start, value)
+                        : new Token(type, substring(start), start, value);
+            }
+            return new Token(type, new String(buffer, start - base, index - start), start, value);
+        }
+
+        /**
+         * Appends the characters of the current token from the given index up
+         * to the current index.
+         */
+        public void appendTo(StringBuilder builder, int from) {
+            if (input != null) {
+                builder.append(input, from, index);
+            } else if (bytes != null) {
+                for (int position = from; position < index; position = next(position)) {
+                    builder.append(decode(position));
+                }
+            } else {
+                builder.append(buffer, from - base, index - from);
+            }
+        }
+
+        /**
+         * Returns the characters of the current token from the given index up
+         * to the current index.
+         */
+        public String substring(int from) {
+            if (bytes != null) {
+                StringBuilder builder = new StringBuilder(index - from);
+                appendTo(builder, from);
+                return builder.toString();
+            }
+            return input != null ? input.substring(from, index) : new String(buffer, from - base, index - from);
+        }
+
+        /**
+         * Returns the char offset of the given index, which only differs from
+         * it for UTF-8 input.
+         */
+        public int charIndex(int index) {
+            int low = 0;
+            int high = checkpoints;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (positions[mid] <= index) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low == 0 ? index : index - deltas[low - 1];
+        }
+
+        /**
+         * Returns the byte offset of the character at index + offset of UTF-8
+         * input, or the limit past its end.
+         */
+        private int position(int offset) {
+            int position = index;
+            for (int i = 0; i < offset && position < limit; i++) {
+                position = next(position);
+            }
+            return position;
+        }
+
+        /**
+         * Returns the byte offset of the character after the one at the given
+         * offset. Stray continuation bytes are skipped one at a time, as they
+         * decode to one replacement character each; offsets into other
+         * malformed input are approximate.
+         */
+        private int next(int position) {
+            int lead = bytes.get(position) & 0xFF;
+            int length = lead < 0x80 ? 1 : isLowSurrogate(position) ? 3 : lead >= 0xF0 ? 1 : lead >= 0xE0 ? 3 : lead >= 0xC0 ? 2 : 1;
+            return Math.min(position + length, limit);
+        }
+
+        /**
+         * Returns true if the given byte offset is the second char of a
+         * supplementary character, one past its first byte.
+         */
+        private boolean isLowSurrogate(int position) {
+            return position > 0 && (bytes.get(position) & 0xC0) == 0x80 && (bytes.get(position - 1) & 0xFF) >= 0xF0;
+        }
+
+        /**
+         * Decodes the char at the given byte offset.
+         */
+        private char decode(int position) {
+            int lead = bytes.get(position) & 0xFF;
+            if (lead < 0x80) {
+                return (char) lead;
+            }
+            boolean low = isLowSurrogate(position);
+            int start = low ? position - 1 : position;
+            lead = bytes.get(start) & 0xFF;
+            int length = lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : lead >= 0xC0 ? 2 : 1;
+            if (length == 1 || start + length > limit) {
+                return '\uFFFD';
+            }
+            int code = lead & (0x7F >> length);
+            for (int i = 1; i < length; i++) {
+                code = code << 6 | bytes.get(start + i) & 0x3F;
+            }
+            if (length < 4) {
+                return (char) code;
+            }
+            return low ? Character.lowSurrogate(code) : Character.highSurrogate(code);
+        }
+
+        /**
+         * Records that the given number of bytes more than chars were read up
+         * to the given byte offset.
+         */
+        private void checkpoint(int position, int delta) {
+            if (checkpoints == positions.length) {
+                positions = Arrays.copyOf(positions, 2 * checkpoints);
+                deltas = Arrays.copyOf(deltas, 2 * checkpoints);
+            }
+            positions[checkpoints] = position;
+            deltas[checkpoints] = (checkpoints == 0 ? 0 : deltas[checkpoints - 1]) + delta;
+            checkpoints++;
+        }
+
+        /**
+         * Reads from the reader until the character at index + offset is
+         * buffered, returning false if the reader is exhausted first.
+         */
+        private boolean fill(int offset) {
+            if (reader == null) {
+                return false;
+            }
+            try {
+                while (index + offset >= limit) {
+                    if (limit - base == buffer.length) {
+                        compact(index + offset + 1 - (index - length));
+                    }
+                    int read = reader.read(buffer, limit - base, buffer.length - (limit - base));
+                    if (read < 0) {
+                        reader.close();
+                        reader = null;
+                        return false;
+                    }
+                    limit += read;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return true;
+        }
+
+        /**
+         * Discards the characters before the current token, growing the buffer
+         * if it cannot hold the required number of characters.
+         */
+        private void compact(int required) {
+            int start = index - length;
+            char[] target = required >= buffer.length ? new char[Math.max(2 * buffer.length, required + 1)] : buffer;
+            System.arraycopy(buffer, start - base, target, 0, limit - start);
+            buffer = target;
+            base = start;
         }
 
     }
 
-}
+    /**
+     * A view of ASCII bytes as characters, used as the source of slice-backed
+     * tokens of UTF-8 input.
+     */
+    private static final class Ascii implements CharSequence {
+
+        private final ByteBuffer bytes;
+        private final int start;
+        private final int end;
+
+        private Ascii(ByteBuffer bytes, int start, int end) {
+            this.bytes = bytes;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Returns true if the bytes between the given offsets are all ASCII.
+         */
+        private boolean is(int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (bytes.get(start + i) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes.get(start + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return new Ascii(bytes, start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            byte[] slice = new byte[end - start];
+            bytes.get(start, slice);
+            return new String(slice, StandardCharsets.ISO_8859_1);
+        }
 
+    }
+
+}
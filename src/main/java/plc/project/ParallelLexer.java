@@ -0,0 +1,115 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Lexes large sources by splitting them into chunks which are lexed in
+ * parallel on a {@link ForkJoinPool}.
+ *
+ * Chunks are split at whitespace outside of any string or character literal,
+ * found with a pre-scan that only tracks quotes. Tokens never span such
+ * whitespace, so each chunk lexes to exactly the tokens sequential lexing
+ * would produce for it. If any chunk fails, the source is lexed sequentially
+ * again so the reported {@link ParseException} is the first one in the source.
+ */
+public final class ParallelLexer {
+
+    /**
+     * Sources shorter than this are lexed sequentially.
+     */
+    private static final int MINIMUM_CHUNK = 1 << 16;
+
+    private ParallelLexer() {}
+
+    public static List<Token> lex(String source) {
+        return lex(source, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Lexes the source using the given pool, producing the same tokens (or
+     * exception) as {@link Lexer#lex()}.
+     */
+    public static List<Token> lex(String source, ForkJoinPool pool) {
+        int chunk = Math.max(MINIMUM_CHUNK, source.length() / (4 * pool.getParallelism()));
+        if (source.length() < 2 * chunk) {
+            return new Lexer(source).lex();
+        }
+        List<Integer> boundaries = split(source, chunk);
+        List<ForkJoinTask<List<Token>>> tasks = new ArrayList<>();
+        for (int i = 0; i + 1 < boundaries.size(); i++) {
+            tasks.add(pool.submit(new Chunk(source, boundaries.get(i), boundaries.get(i + 1))));
+        }
+        try {
+            int size = 0;
+            List<List<Token>> chunks = new ArrayList<>();
+            for (ForkJoinTask<List<Token>> task : tasks) {
+                chunks.add(task.join());
+                size += chunks.get(chunks.size() - 1).size();
+            }
+            List<Token> result = new ArrayList<>(size);
+            chunks.forEach(result::addAll);
+            return result;
+        } catch (ParseException e) {
+            tasks.forEach(task -> task.cancel(true));
+            return new Lexer(source).lex();
+        }
+    }
+
+    /**
+     * Returns the chunk boundaries, starting with 0 and ending with the source
+     * length. Every other boundary is the index of a whitespace character
+     * outside of any literal, roughly every {@code chunk} characters.
+     */
+    static List<Integer> split(String source, int chunk) {
+        List<Integer> boundaries = new ArrayList<>();
+        boundaries.add(0);
+        int target = chunk;
+        int i = 0;
+        while (i < source.length()) {
+            char c = source.charAt(i);
+            if (c == '"') {
+                i++;
+                while (i < source.length() && source.charAt(i) != '"' && source.charAt(i) != '\n' && source.charAt(i) != '\r') {
+                    i += source.charAt(i) == '\\' ? 2 : 1;
+                }
+                i++;
+            } else if (c == '\'') {
+                i += i + 1 < source.length() && source.charAt(i + 1) == '\\' ? 4 : 3;
+            } else if (i >= target && Lexer.is(c, Lexer.WHITESPACE)) {
+                boundaries.add(i);
+                target = i + chunk;
+                i++;
+            } else {
+                i++;
+            }
+        }
+        boundaries.add(source.length());
+        return boundaries;
+    }
+
+    private static final class Chunk extends RecursiveTask<List<Token>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String source;
+        private final int start;
+        private final int end;
+
+        private Chunk(String source, int start, int end) {
+            this.source = source;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected List<Token> compute() {
+            return new Lexer(source, start, end).lex();
+        }
+
+    }
+
+}
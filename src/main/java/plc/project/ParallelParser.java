@@ -0,0 +1,145 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parses large sources by splitting their tokens into chunks of whole globals
+ * and functions which are parsed in parallel on a {@link ForkJoinPool}.
+ *
+ * Chunks are split before a {@code FUN}, {@code LIST}, {@code VAR} or
+ * {@code VAL} outside of any function, found with a pre-scan that only tracks
+ * the nesting of {@code FUN}, {@code IF}, {@code WHILE} and {@code SWITCH}
+ * with their {@code END}. Each chunk is parsed from its first token with the
+ * whole token list available, so a chunk starting where the sequential parse
+ * would start an item parses exactly as it would sequentially. The first chunk
+ * starts at the first token, and every chunk must end exactly where the next
+ * one starts, so the result is the same as {@link Parser#parseSource()}. If
+ * any chunk fails or ends elsewhere, as with malformed input, the tokens are
+ * parsed sequentially again so the reported {@link ParseException} is the
+ * first one in the source.
+ */
+public final class ParallelParser {
+
+    /**
+     * Token lists shorter than this are parsed sequentially.
+     */
+    private static final int MINIMUM_CHUNK = 1 << 14;
+
+    private ParallelParser() {}
+
+    public static Ast.Source parse(List<Token> tokens) {
+        return parse(tokens, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parses the tokens using the given pool, producing the same source (or
+     * exception) as {@link Parser#parseSource()}.
+     */
+    public static Ast.Source parse(List<Token> tokens, ForkJoinPool pool) {
+        int chunk = Math.max(MINIMUM_CHUNK, tokens.size() / (4 * pool.getParallelism()));
+        if (tokens.size() < 2 * chunk) {
+            return new Parser(tokens).parseSource();
+        }
+        List<Integer> boundaries = split(tokens, chunk);
+        List<ForkJoinTask<List<Ast>>> tasks = new ArrayList<>();
+        for (int i = 0; i + 1 < boundaries.size(); i++) {
+            tasks.add(pool.submit(new Chunk(tokens, boundaries.get(i), boundaries.get(i + 1))));
+        }
+        try {
+            List<Ast> items = new ArrayList<>();
+            boolean aligned = true;
+            for (int i = 0; i < tasks.size() && aligned; i++) {
+                List<Ast> result = tasks.get(i).join();
+                aligned = result != null;
+                if (aligned) {
+                    items.addAll(result);
+                }
+            }
+            if (aligned) {
+                return Parser.source(items);
+            }
+        } catch (ParseException e) {
+            // parsed again sequentially below
+        }
+        tasks.forEach(task -> task.cancel(true));
+        return new Parser(tokens).parseSource();
+    }
+
+    /**
+     * Returns the chunk boundaries, starting with 0 and ending with the number
+     * of tokens. Every other boundary is the position of a token starting a
+     * global or function outside of any function, roughly every {@code chunk}
+     * tokens.
+     */
+    static List<Integer> split(List<Token> tokens, int chunk) {
+        List<Integer> boundaries = new ArrayList<>();
+        boundaries.add(0);
+        int target = chunk;
+        int depth = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            switch (tokens.get(i).getKind()) {
+                case FUN:
+                case LIST:
+                case VAR:
+                case VAL:
+                    if (depth == 0 && i >= target) {
+                        boundaries.add(i);
+                        target = i + chunk;
+                    }
+                    if (depth == 0 && tokens.get(i).getKind() == Token.Kind.FUN) {
+                        depth = 1;
+                    }
+                    break;
+                case IF:
+                case WHILE:
+                case SWITCH:
+                    if (depth > 0) {
+                        depth++;
+                    }
+                    break;
+                case END:
+                    depth = Math.max(depth - 1, 0);
+                    break;
+                default:
+                    break;
+            }
+        }
+        boundaries.add(tokens.size());
+        return boundaries;
+    }
+
+    private static final class Chunk extends RecursiveTask<List<Ast>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Token> tokens;
+        private final int start;
+        private final int end;
+
+        private Chunk(List<Token> tokens, int start, int end) {
+            this.tokens = tokens;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Returns the items of the chunk, or null if the last one does not end
+         * exactly at the end of the chunk.
+         */
+        @Override
+        protected List<Ast> compute() {
+            Parser parser = new Parser(tokens, start);
+            List<Ast> items = new ArrayList<>();
+            while (parser.position() < end) {
+                items.add(parser.parseTopLevel());
+            }
+            return parser.position() == end ? items : null;
+        }
+
+    }
+
+}
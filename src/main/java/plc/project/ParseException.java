@@ -4,8 +4,13 @@ public final class ParseException extends RuntimeException {
 
     private final int index;
 
+    /**
+     * Parse exceptions are reported to the user by message and index, so
+     * they are created without a stack trace, which is most of the cost of
+     * throwing them.
+     */
     public ParseException(String message, int index) {
-        super(message);
+        super(message, null, false, false);
         this.index = index;
     }
 
@@ -3,6 +3,7 @@ package plc.project;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * The parser takes the sequence of tokens emitted by the lexer and turns that
@@ -10,8 +11,9 @@ import java.util.*;
  * Tree (AST).
  *
  * The parser has a similar architecture to the lexer, just with {@link Token}s
- * instead of characters. As before, {@link #peek(Object...)} and {@link
- * #match(Object...)} are helpers to make the implementation easier.
+ * instead of characters. As before, {@link #peek(Token.Kind)} and {@link
+ * #match(Token.Kind)} are helpers to make the implementation easier, matching
+ * tokens by their {@link Token.Kind} or {@link Token.Type}.
  *
  * This type of parser is called <em>recursive descent</em>. Each rule in our
  * grammar will have its own function, and reference to other rules correspond
@@ -19,36 +21,285 @@ import java.util.*;
  */
 public final class Parser {
 
+    static final int LOGICAL = 1;
+    private static final int COMPARISON = 2;
+    private static final int ADDITIVE = 3;
+    private static final int MULTIPLICATIVE = 4;
+
+    /**
+     * The precedence of every binary operator kind, or 0 for kinds which are
+     * not binary operators, and the operator string used in the AST.
+     */
+    static final int[] PRECEDENCE = new int[Token.Kind.values().length];
+    private static final String[] OPERATORS = new String[Token.Kind.values().length];
+
+    static {
+        operator(Token.Kind.AND, "&&", LOGICAL);
+        operator(Token.Kind.OR, "||", LOGICAL);
+        operator(Token.Kind.LESS, "<", COMPARISON);
+        operator(Token.Kind.GREATER, ">", COMPARISON);
+        operator(Token.Kind.EQUAL, "==", COMPARISON);
+        operator(Token.Kind.NOT_EQUAL, "!=", COMPARISON);
+        operator(Token.Kind.PLUS, "+", ADDITIVE);
+        operator(Token.Kind.MINUS, "-", ADDITIVE);
+        operator(Token.Kind.STAR, "*", MULTIPLICATIVE);
+        operator(Token.Kind.SLASH, "/", MULTIPLICATIVE);
+        operator(Token.Kind.CARET, "^", MULTIPLICATIVE);
+    }
+
+    private static void operator(Token.Kind kind, String operator, int precedence) {
+        PRECEDENCE[kind.ordinal()] = precedence;
+        OPERATORS[kind.ordinal()] = operator;
+    }
+
     private final TokenStream tokens;
 
+    /**
+     * The errors recovered from so far, or null if the first error should be
+     * thrown instead, see {@link #parseSource(List)}.
+     */
+    private List<ParseException> errors;
+
+    /**
+     * The shared instances of the expressions parsed so far, or null if
+     * interning is off, see {@link #setInterning(boolean)}.
+     */
+    private Map<Interned, Ast.Expression> interned;
+    private Set<Ast.Expression> shared;
+
+    /**
+     * Whether function bodies are parsed on first access, see {@link
+     * #setLazyBodies(boolean)}.
+     */
+    private boolean lazy = false;
+
+    /**
+     * The stack of operands being parsed, see {@link
+     * #parseBinaryExpression(int)}, whose entries are reused.
+     */
+    private final List<Operand> operands = new ArrayList<>();
+    private int depth = 0;
+
+    /**
+     * The elements of the list literal being packed, see {@link
+     * #parsePackedList()}.
+     */
+    private final Packing packing = new Packing();
+
     public Parser(List<Token> tokens) {
         this.tokens = new TokenStream(tokens);
     }
 
+    /**
+     * Creates a parser over the given tokens starting at the given position
+     * rather than the first token, with the tokens before it still available
+     * for error indices.
+     */
+    Parser(List<Token> tokens, int start) {
+        this.tokens = new TokenStream(tokens);
+        this.tokens.index = start;
+    }
+
+    /**
+     * Creates a parser pulling tokens lazily from the given source, such as a
+     * {@link Lexer}, keeping only a small window of tokens around the current
+     * position.
+     */
+    public Parser(Iterator<Token> tokens) {
+        this.tokens = new TokenStream(tokens);
+    }
+
+    /**
+     * Creates a parser reading directly from a packed token buffer, which
+     * only materializes the tokens the parser needs the literal of.
+     */
+    public Parser(TokenBuffer tokens) {
+        this.tokens = new TokenStream(tokens);
+    }
+
+    private Parser(TokenStream tokens) {
+        this.tokens = tokens;
+    }
+
     /**
      * Parses the {@code source} rule.
      */
     public Ast.Source parseSource() throws ParseException {
-        try {
-            List<Ast.Global> globTokens = new ArrayList<>();
-            List<Ast.Function> funcTokens = new ArrayList<>();
+        List<Ast.Global> globTokens = new ArrayList<>();
+        List<Ast.Function> funcTokens = new ArrayList<>();
+        parseSource(globTokens::add, funcTokens::add);
+        return new Ast.Source(globTokens, funcTokens);
+    }
 
-            while (tokens.has(0))
+    /**
+     * Parses the {@code source} rule, passing each global and function to the
+     * given consumers in source order as soon as it is parsed instead of
+     * building an {@link Ast.Source}. With a parser pulling tokens from an
+     * iterator, such as a {@link Lexer} over a reader, neither the tokens nor
+     * the tree of the whole source are ever held in memory. Items parsed
+     * before an error have already been consumed when it is thrown; in
+     * recovery mode, see {@link #parseSource(List)}, items in error are
+     * skipped.
+     */
+    public void parseSource(Consumer<Ast.Global> globals, Consumer<Ast.Function> functions) throws ParseException {
+        while (tokens.has(0))
+        {
+            int start = tokens.index;
+            Ast item;
+            try
+            {
+                item = parseTopLevel();
+            }
+            catch (ParseException e)
             {
-                if (peek("LIST") || peek("VAR") || peek("VAL"))
+                recover(e);
+                if (tokens.index == start)
                 {
-                    Ast.Global globalToken = parseGlobal();
-                    globTokens.add(globalToken);
+                    tokens.advance();
                 }
-                else if (peek("FUN"))
+                while (tokens.has(0) && !startsGlobal())
                 {
-                    Ast.Function functionToken = parseFunction();
-                    funcTokens.add(functionToken);
+                    tokens.advance();
                 }
+                continue;
+            }
+            if (item instanceof Ast.Function)
+            {
+                functions.accept((Ast.Function) item);
+            }
+            else
+            {
+                globals.accept((Ast.Global) item);
+            }
+        }
+    }
+
+    /**
+     * Parses the {@code source} rule in recovery mode, passing each global and
+     * function to the given consumers as {@link #parseSource(Consumer,
+     * Consumer)} does and every error to the given list.
+     */
+    public void parseSource(Consumer<Ast.Global> globals, Consumer<Ast.Function> functions, List<ParseException> errors) {
+        this.errors = errors;
+        try
+        {
+            parseSource(globals, functions);
+        }
+        finally
+        {
+            this.errors = null;
+        }
+    }
+
+    /**
+     * Parses the {@code source} rule in recovery mode. Instead of throwing,
+     * every error is added to the given list and parsing continues. Within a
+     * block, the statement in error is skipped up to its {@code ;} or the
+     * {@code END} of the block. Otherwise parsing resumes at the next
+     * {@code FUN}, {@code VAR}, {@code VAL} or {@code LIST}.
+     *
+     * Returns the partial source with every global and function which could
+     * be parsed, minus any statements in error.
+     */
+    public Ast.Source parseSource(List<ParseException> errors) {
+        List<Ast.Global> globals = new ArrayList<>();
+        List<Ast.Function> functions = new ArrayList<>();
+        parseSource(globals::add, functions::add, errors);
+        return new Ast.Source(globals, functions);
+    }
+
+    /**
+     * Turns interning on or off. While on, structurally identical literals,
+     * and groups and binary expressions whose operands are all shared, are
+     * parsed to one shared instance. Since the type the {@link Analyzer} sets
+     * on these depends only on the expression itself, analyzing any of its
+     * uses sets the same type. Accesses, function calls and lists are never
+     * shared, since their variable, function or type depends on the scope or
+     * the global they are in, although their operands may be.
+     */
+    public void setInterning(boolean interning) {
+        this.interned = interning ? new HashMap<>() : null;
+        this.shared = interning ? Collections.newSetFromMap(new IdentityHashMap<>()) : null;
+    }
+
+    /**
+     * Sets whether the statements of functions are only parsed the first time
+     * they are accessed, with the parser recording the tokens of each body.
+     * The end of a body is found by scanning its statements and blocks, see
+     * {@link #bodyEnd()}, and a body which the scan finds invalid is parsed
+     * eagerly, so the parser reports its error as usual. Should a lazy body
+     * still fail to parse, the {@link ParseException} is thrown by the first
+     * access to the statements of the function. Bodies are always parsed
+     * eagerly when parsing from an iterator, whose tokens are not kept, or
+     * when recovering from errors with {@link #parseSource(List)}, so that
+     * every error is reported.
+     */
+    public void setLazyBodies(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    /**
+     * Parses the next global or function of the {@code source} rule.
+     */
+    Ast parseTopLevel() throws ParseException {
+        switch (tokens.kind(0))
+        {
+            case LIST:
+            case VAR:
+            case VAL:
+                return parseGlobal();
+            case FUN:
+                return parseFunction();
+            default:
+                throw new ParseException("Expected Global or Function", tokens.get(0).getIndex());
+        }
+    }
+
+    /**
+     * Returns the position of the next token, which is the number of tokens
+     * consumed so far unless the parser was created with a start position.
+     */
+    int position() {
+        return tokens.index;
+    }
+
+    /**
+     * Returns the source with the given globals and functions, in order.
+     */
+    static Ast.Source source(List<Ast> items) {
+        List<Ast.Global> globals = new ArrayList<>();
+        List<Ast.Function> functions = new ArrayList<>();
+        for (Ast item : items) {
+            if (item instanceof Ast.Function) {
+                functions.add((Ast.Function) item);
+            } else {
+                globals.add((Ast.Global) item);
             }
-            return new Ast.Source(globTokens, funcTokens);
-        } catch (ParseException e){
-            throw new ParseException(e.getMessage(), e.getIndex());
+        }
+        return new Ast.Source(globals, functions);
+    }
+
+    /**
+     * Records the error in recovery mode, or otherwise rethrows it.
+     */
+    private void recover(ParseException error) {
+        if (errors == null)
+        {
+            throw error;
+        }
+        errors.add(error);
+    }
+
+    private boolean startsGlobal() {
+        switch (tokens.kind(0))
+        {
+            case LIST:
+            case VAR:
+            case VAL:
+            case FUN:
+                return true;
+            default:
+                return false;
         }
     }
 
@@ -57,22 +308,17 @@ public final class Parser {
      * next tokens start a global, aka {@code LIST|VAL|VAR}.
      */
     public Ast.Global parseGlobal() throws ParseException {
-        try {
-            if (match("LIST"))
-            {
+        switch (tokens.kind(0))
+        {
+            case LIST:
+                tokens.advance();
                 return parseList();
-            }
-            if (match("VAR"))
-            {
+            case VAR:
+                tokens.advance();
                 return parseMutable();
-            }
-            else
-            {
-                match("VAL");
+            default:
+                match(Token.Kind.VAL);
                 return parseImmutable();
-            }
-        } catch (ParseException e) {
-            throw new ParseException(e.getMessage(), e.getIndex());
         }
     }
 
@@ -81,78 +327,126 @@ public final class Parser {
      * next token declares a list, aka {@code LIST}.
      */
     public Ast.Global parseList() throws ParseException {
-        try
+        if (!peek(0, Token.Type.IDENTIFIER) || !peek(1, Token.Kind.COLON) || !peek(2, Token.Type.IDENTIFIER)
+                || !peek(3, Token.Kind.ASSIGN) || !peek(4, Token.Kind.LEFT_BRACKET))
         {
-            if (!peek(Token.Type.IDENTIFIER, ":", Token.Type.IDENTIFIER, "=", "["))
-            {
-                throw new ParseException("Invalid List Statement", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            }
-            String name = tokens.get(0).getLiteral();
-            match(Token.Type.IDENTIFIER, ":");
-            String typeName = tokens.get(0).getLiteral();
-            match(Token.Type.IDENTIFIER, "=", "[");
+            throw new ParseException("Invalid List Statement", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+        }
+        String name = tokens.get(0).getLiteral();
+        match(Token.Type.IDENTIFIER);
+        match(Token.Kind.COLON);
+        String typeName = tokens.get(0).getLiteral();
+        match(Token.Type.IDENTIFIER);
+        match(Token.Kind.ASSIGN);
+        match(Token.Kind.LEFT_BRACKET);
+
+        Ast.Expression.PlcList packed = parsePackedList();
+        if (packed != null)
+        {
+            return new Ast.Global(name, typeName, true, Optional.of(packed));
+        }
 
+        List<Ast.Expression> expressions = new ArrayList<>();
+        for (int i = 0; i < packing.size(); i++)
+        {
+            expressions.add(intern(new Ast.Expression.Literal(packing.get(i))));
+        }
+        if (expressions.isEmpty())
+        {
+            expressions.add(parseExpression());
+        }
 
-            Ast.Expression expr1 = parseExpression();
-            List<Ast.Expression> expressions = new ArrayList<>();
-            expressions.add(expr1);
+        while (peek(Token.Kind.COMMA)) {
+            match(Token.Kind.COMMA);
+            Ast.Expression argument = parseExpression();
+            expressions.add(argument);
+        }
 
-            while (peek(",")) {
-                match(",");
-                Ast.Expression argument = parseExpression();
-                expressions.add(argument);
+        if (match(Token.Kind.RIGHT_BRACKET)) {
+            if (match(Token.Kind.SEMICOLON))
+            {
+                return new Ast.Global(name, typeName, true, Optional.of(new Ast.Expression.PlcList(expressions)));
+            }
+            else
+            {
+                throw new ParseException("Missing Semicolon", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
             }
+        } else {
+            throw new ParseException("Missing Bracket", tokens.get(-1).getIndex()+ tokens.get(-1).getLiteral().length());
+        }
 
-            if (match("]")) {
-                if (match(";"))
-                {
-                    return new Ast.Global(name, typeName, true, Optional.of(new Ast.Expression.PlcList(expressions)));
-                }
-                else
+
+    }
+
+    /**
+     * Parses the elements of a list literal of only integers or only decimals
+     * into a packed list, without creating a node for each element. Returns
+     * null if the list is anything else, leaving the elements packed so far
+     * in {@link #packing} and the tokens from the comma after them to be
+     * parsed as usual, so errors are reported as if nothing was packed.
+     */
+    private Ast.Expression.PlcList parsePackedList() throws ParseException {
+        Token.Type type = tokens.has(0) ? tokens.type(0) : null;
+        packing.clear(type == Token.Type.DECIMAL);
+        if (type != Token.Type.INTEGER && type != Token.Type.DECIMAL || !packable(0, type))
+        {
+            return null;
+        }
+        while (true)
+        {
+            tokens.advance();
+            if (match(Token.Kind.RIGHT_BRACKET))
+            {
+                if (!match(Token.Kind.SEMICOLON))
                 {
                     throw new ParseException("Missing Semicolon", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
                 }
-            } else {
-                throw new ParseException("Missing Bracket", tokens.get(-1).getIndex()+ tokens.get(-1).getLiteral().length());
+                return packing.toList();
             }
-
-
-        } catch (ParseException e){
-            throw new ParseException(e.getMessage(), e.getIndex());
+            if (!packable(1, type))
+            {
+                return null;
+            }
+            tokens.advance();
         }
     }
 
+    /**
+     * Packs the literal at the given offset if it has the given type, is
+     * followed by a comma or closing bracket, and fits in a packed list.
+     */
+    private boolean packable(int offset, Token.Type type) {
+        return peek(offset, type) && (peek(offset + 1, Token.Kind.COMMA) || peek(offset + 1, Token.Kind.RIGHT_BRACKET))
+                && packing.add(tokens.get(offset).getValue());
+    }
+
     /**
      * Parses the {@code mutable} rule. This method should only be called if the
      * next token declares a mutable global variable, aka {@code VAR}.
      */
     public Ast.Global parseMutable() throws ParseException {
-        try
+        if (!peek(0, Token.Type.IDENTIFIER) || !peek(1, Token.Kind.COLON) || !peek(2, Token.Type.IDENTIFIER))
         {
-            if (!peek(Token.Type.IDENTIFIER, ":", Token.Type.IDENTIFIER))
-            {
-                throw new ParseException("Invalid Mutable Statement", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            }
-            String name = tokens.get(0).getLiteral();
-            match(Token.Type.IDENTIFIER, ":");
-            String typeName = tokens.get(0).getLiteral();
-            match(Token.Type.IDENTIFIER);
-
-            Ast.Expression expr = null;
-            if (match("="))
-            {
-                expr = parseExpression();
-            }
-
-            if (!match(";"))
-            {
-                throw new ParseException("Missing Semicolon", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            }
+            throw new ParseException("Invalid Mutable Statement", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+        }
+        String name = tokens.get(0).getLiteral();
+        match(Token.Type.IDENTIFIER);
+        match(Token.Kind.COLON);
+        String typeName = tokens.get(0).getLiteral();
+        match(Token.Type.IDENTIFIER);
+
+        Ast.Expression expr = null;
+        if (match(Token.Kind.ASSIGN))
+        {
+            expr = parseExpression();
+        }
 
-                return new Ast.Global(name, typeName, true, Optional.ofNullable(expr));
-        } catch (ParseException e){
-            throw new ParseException(e.getMessage(), e.getIndex());
+        if (!match(Token.Kind.SEMICOLON))
+        {
+            throw new ParseException("Missing Semicolon", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
         }
+
+            return new Ast.Global(name, typeName, true, Optional.ofNullable(expr));
     }
 
     /**
@@ -160,35 +454,31 @@ public final class Parser {
      * next token declares an immutable global variable, aka {@code VAL}.
      */
     public Ast.Global parseImmutable() throws ParseException {
-        try
+        if (!peek(0, Token.Type.IDENTIFIER) || !peek(1, Token.Kind.COLON) || !peek(2, Token.Type.IDENTIFIER))
         {
-            if (!peek(Token.Type.IDENTIFIER, ":", Token.Type.IDENTIFIER))
-            {
-                throw new ParseException("Invalid Immutable Statement", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            }
-            String name = tokens.get(0).getLiteral();
-            match(Token.Type.IDENTIFIER, ":");
-            String typeName = tokens.get(0).getLiteral();
-            match(Token.Type.IDENTIFIER);
+            throw new ParseException("Invalid Immutable Statement", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+        }
+        String name = tokens.get(0).getLiteral();
+        match(Token.Type.IDENTIFIER);
+        match(Token.Kind.COLON);
+        String typeName = tokens.get(0).getLiteral();
+        match(Token.Type.IDENTIFIER);
 
 
-            if (!match("="))
-            {
-                throw new ParseException("Missing Equality", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            }
+        if (!match(Token.Kind.ASSIGN))
+        {
+            throw new ParseException("Missing Equality", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+        }
 
-            Ast.Expression expr = parseExpression();
+        Ast.Expression expr = parseExpression();
 
-            if (!match(";"))
-            {
-                throw new ParseException("Missing Semicolon", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            }
-            else
-            {
-                return new Ast.Global(name, typeName, false, Optional.of(expr));
-            }
-        } catch (ParseException e){
-            throw new ParseException(e.getMessage(), e.getIndex());
+        if (!match(Token.Kind.SEMICOLON))
+        {
+            throw new ParseException("Missing Semicolon", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+        }
+        else
+        {
+            return new Ast.Global(name, typeName, false, Optional.of(expr));
         }
     }
 
@@ -197,77 +487,325 @@ public final class Parser {
      * next tokens start a method, aka {@code FUN}.
      */
     public Ast.Function parseFunction() throws ParseException {
-        try
-        {
-            match("FUN");
-            if (match(Token.Type.IDENTIFIER)) {
-                String name = tokens.get(-1).getLiteral();
+        match(Token.Kind.FUN);
+        if (match(Token.Type.IDENTIFIER)) {
+            String name = tokens.get(-1).getLiteral();
 
-                if (match("(")){
-                    List<String> func = new ArrayList<>();
-                    List<String> paramTypes = new ArrayList<>();
+            if (match(Token.Kind.LEFT_PAREN)){
+                List<String> func = new ArrayList<>();
+                List<String> paramTypes = new ArrayList<>();
 
-                    if (match(Token.Type.IDENTIFIER))
+                if (match(Token.Type.IDENTIFIER))
+                {
+                    func.add(tokens.get(-1).getLiteral());
+                    if (!peek(Token.Kind.COLON, Token.Type.IDENTIFIER))
                     {
-                        func.add(tokens.get(-1).getLiteral());
-                        if (!peek(":", Token.Type.IDENTIFIER))
-                        {
-                            throw new ParseException("Missing argument type", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-                        }
-                        match(":", Token.Type.IDENTIFIER);
-                        paramTypes.add(tokens.get(-1).getLiteral());
+                        throw new ParseException("Missing argument type", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+                    }
+                    match(Token.Kind.COLON, Token.Type.IDENTIFIER);
+                    paramTypes.add(tokens.get(-1).getLiteral());
+                }
+                while (match(Token.Kind.COMMA))
+                {
+                    if (!match(Token.Type.IDENTIFIER))
+                    {
+                        throw new ParseException("Trailing Comma", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+                    }
+                    func.add(tokens.get(-1).getLiteral());
+                    if (!peek(Token.Kind.COLON, Token.Type.IDENTIFIER))
+                    {
+                        throw new ParseException("Missing argument type", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+                    }
+                    match(Token.Kind.COLON, Token.Type.IDENTIFIER);
+                    paramTypes.add(tokens.get(-1).getLiteral());
+                }
+
+                List<Ast.Statement> exp = new ArrayList<>();
+                String returnType = "";
+                if (match(Token.Kind.RIGHT_PAREN)){
+                    if (match(Token.Kind.COLON, Token.Type.IDENTIFIER))
+                    {
+                        returnType = tokens.get(-1).getLiteral();
                     }
-                    while (match(","))
+                    else
                     {
-                        if (!match(Token.Type.IDENTIFIER))
+                        returnType = null;
+                    }
+
+                    if (!match(Token.Kind.DO)){
+                        throw new ParseException("Expected DO", tokens.get(-1).getIndex());
+                    }
+                    exp = parseBody();
+                    if (!match(Token.Kind.END))
+                    {
+                        throw new ParseException("No END", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+                    }
+                } else {
+                    throw new ParseException("Missing Parenthesis", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+                }
+                return new Ast.Function(name, func, paramTypes, Optional.ofNullable(returnType), exp);
+
+            } else {
+                throw new ParseException("Missing Parenthesis", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+            }
+        } else {
+            throw new ParseException("Expected Function Name", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+        }
+
+
+    }
+
+    /**
+     * Parses the block of a function, or skips to its {@code END} returning
+     * statements parsed on first access if bodies are lazy.
+     */
+    private List<Ast.Statement> parseBody() throws ParseException {
+        int end = lazy && errors == null ? bodyEnd() : -1;
+        if (end < 0)
+        {
+            return parseBlock();
+        }
+        Parser body = new Parser(tokens.from(tokens.index));
+        body.interned = interned;
+        body.shared = shared;
+        tokens.index = end;
+        return new Body(body, end);
+    }
+
+    /**
+     * Returns the position of the {@code END} closing the function body
+     * starting at the next token, or -1 if the tokens are not kept or the
+     * body is not valid, in which case it is parsed eagerly so any error is
+     * reported as usual.
+     *
+     * Keywords are plain identifiers in expressions and as the name of a
+     * declaration, as in {@code y = IF;} or {@code LET END;}, so rather than
+     * pairing keywords with {@code END}s the body is scanned following the
+     * statements, blocks and operands of the grammar, without building
+     * anything. Blocks are kept by the kind of their statement, {@code FUN}
+     * for the body itself, and open calls, indexes and groups by the kinds
+     * of {@link Operand}.
+     */
+    private int bodyEnd() {
+        if (!tokens.kept())
+        {
+            return -1;
+        }
+        List<Token.Kind> blocks = new ArrayList<>();
+        List<Integer> groups = new ArrayList<>();
+        blocks.add(Token.Kind.FUN);
+        Token.Kind end = null;
+        Token.Kind opened = null;
+        boolean operand = false;
+        boolean assigned = false;
+        boolean callable = false;
+        for (int i = 0; tokens.has(i); i++)
+        {
+            Token.Kind kind = tokens.kind(i);
+            if (end == null)
+            {
+                Token.Kind block = blocks.get(blocks.size() - 1);
+                switch (kind)
+                {
+                    case END:
+                        if (block == Token.Kind.FUN)
                         {
-                            throw new ParseException("Trailing Comma", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+                            return tokens.index + i;
                         }
-                        func.add(tokens.get(-1).getLiteral());
-                        if (!peek(":", Token.Type.IDENTIFIER))
+                        else if (block == Token.Kind.CASE)
                         {
-                            throw new ParseException("Missing argument type", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+                            return -1;
                         }
-                        match(":", Token.Type.IDENTIFIER);
-                        paramTypes.add(tokens.get(-1).getLiteral());
-                    }
-
-                    List<Ast.Statement> exp = new ArrayList<>();
-                    String returnType = "";
-                    if (match(")")){
-                        if (match( ":", Token.Type.IDENTIFIER))
+                        blocks.remove(blocks.size() - 1);
+                        continue;
+                    case LIST:
+                    case VAR:
+                    case VAL:
+                    case FUN:
+                        return -1;
+                    case ELSE:
+                    case CASE:
+                    case DEFAULT:
+                        if (block == Token.Kind.WHILE)
                         {
-                            returnType = tokens.get(-1).getLiteral();
+                            break;
                         }
-                        else
+                        else if (kind == Token.Kind.ELSE && block == Token.Kind.IF)
                         {
-                            returnType = null;
+                            blocks.set(blocks.size() - 1, Token.Kind.ELSE);
+                            continue;
                         }
-
-                        if (!match("DO")){
-                            throw new ParseException("Expected DO", tokens.get(-1).getIndex());
+                        else if (kind == Token.Kind.CASE && block == Token.Kind.CASE)
+                        {
+                            end = Token.Kind.COLON;
+                            operand = true;
+                            assigned = true;
+                            continue;
                         }
-                        exp = parseBlock();
-                        if (!match("END"))
+                        else if (kind == Token.Kind.DEFAULT && block == Token.Kind.CASE)
                         {
-                            throw new ParseException("No END", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+                            blocks.set(blocks.size() - 1, Token.Kind.DEFAULT);
+                            continue;
                         }
-                    } else {
-                        throw new ParseException("Missing Parenthesis", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-                    }
-                    return new Ast.Function(name, func, paramTypes, Optional.ofNullable(returnType), exp);
-
-                } else {
-                    throw new ParseException("Missing Parenthesis", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+                        return -1;
+                    case LET:
+                        if (!peek(i + 1, Token.Type.IDENTIFIER))
+                        {
+                            return -1;
+                        }
+                        i++;
+                        if (peek(i + 1, Token.Kind.COLON) && peek(i + 2, Token.Type.IDENTIFIER))
+                        {
+                            i += 2;
+                        }
+                        if (peek(i + 1, Token.Kind.SEMICOLON))
+                        {
+                            i++;
+                            continue;
+                        }
+                        else if (!peek(i + 1, Token.Kind.ASSIGN))
+                        {
+                            return -1;
+                        }
+                        i++;
+                        end = Token.Kind.SEMICOLON;
+                        operand = true;
+                        assigned = true;
+                        continue;
+                    case RETURN:
+                    case IF:
+                    case WHILE:
+                    case SWITCH:
+                        end = kind == Token.Kind.RETURN ? Token.Kind.SEMICOLON : kind == Token.Kind.SWITCH ? Token.Kind.SWITCH : Token.Kind.DO;
+                        opened = kind;
+                        operand = true;
+                        assigned = true;
+                        continue;
+                    default:
+                        break;
                 }
-            } else {
-                throw new ParseException("Expected Function Name", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+                end = Token.Kind.SEMICOLON;
+                operand = true;
+                assigned = false;
             }
+            if (operand)
+            {
+                if (tokens.type(i) != Token.Type.OPERATOR)
+                {
+                    operand = false;
+                    callable = tokens.type(i) == Token.Type.IDENTIFIER && kind != Token.Kind.NIL
+                            && kind != Token.Kind.TRUE && kind != Token.Kind.FALSE;
+                }
+                else if (kind == Token.Kind.LEFT_PAREN)
+                {
+                    groups.add(Operand.GROUP);
+                }
+                else if (kind == Token.Kind.RIGHT_PAREN && !groups.isEmpty() && groups.get(groups.size() - 1) == Operand.CALL
+                        && tokens.kind(i - 1) == Token.Kind.LEFT_PAREN)
+                {
+                    groups.remove(groups.size() - 1);
+                    operand = false;
+                    callable = false;
+                }
+                else
+                {
+                    return -1;
+                }
+                continue;
+            }
+            switch (kind)
+            {
+                case LEFT_PAREN:
+                case LEFT_BRACKET:
+                    if (!callable)
+                    {
+                        return -1;
+                    }
+                    groups.add(kind == Token.Kind.LEFT_PAREN ? Operand.CALL : Operand.INDEX);
+                    operand = true;
+                    break;
+                case RIGHT_PAREN:
+                case RIGHT_BRACKET:
+                    if (groups.isEmpty() || (groups.get(groups.size() - 1) == Operand.INDEX) != (kind == Token.Kind.RIGHT_BRACKET))
+                    {
+                        return -1;
+                    }
+                    groups.remove(groups.size() - 1);
+                    break;
+                case COMMA:
+                    if (groups.isEmpty() || groups.get(groups.size() - 1) != Operand.CALL)
+                    {
+                        return -1;
+                    }
+                    operand = true;
+                    break;
+                case ASSIGN:
+                    if (assigned || !groups.isEmpty())
+                    {
+                        return -1;
+                    }
+                    assigned = true;
+                    operand = true;
+                    break;
+                case EQUAL:
+                case NOT_EQUAL:
+                case LESS:
+                case GREATER:
+                case AND:
+                case OR:
+                case PLUS:
+                case MINUS:
+                case STAR:
+                case SLASH:
+                case CARET:
+                    operand = true;
+                    break;
+                default:
+                    if (!groups.isEmpty())
+                    {
+                        return -1;
+                    }
+                    else if (kind == end && end != Token.Kind.SWITCH)
+                    {
+                        if (end == Token.Kind.DO)
+                        {
+                            blocks.add(opened);
+                        }
+                        end = null;
+                    }
+                    else if (end == Token.Kind.SWITCH && kind == Token.Kind.CASE)
+                    {
+                        blocks.add(Token.Kind.CASE);
+                        end = Token.Kind.COLON;
+                        operand = true;
+                    }
+                    else if (end == Token.Kind.SWITCH && kind == Token.Kind.DEFAULT)
+                    {
+                        blocks.add(Token.Kind.DEFAULT);
+                        end = null;
+                    }
+                    else
+                    {
+                        return -1;
+                    }
+                    break;
+            }
+            callable = false;
+        }
+        return -1;
+    }
 
-
-        } catch (ParseException e){
-            throw new ParseException(e.getMessage(), e.getIndex());
+    /**
+     * Parses a lazy function body, which must end at the given position with
+     * the {@code END} the parser skipped to.
+     */
+    private List<Ast.Statement> parseBody(int end) throws ParseException {
+        List<Ast.Statement> block = parseBlock();
+        if (tokens.index != end || !peek(Token.Kind.END))
+        {
+            throw new ParseException("No END", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
         }
+        return block;
     }
 
     /**
@@ -275,19 +813,16 @@ public final class Parser {
      * preceding token indicates the opening a block.
      */
     public List<Ast.Statement> parseBlock() throws ParseException {
-        try
-        {
-            List<Ast.Statement> block = new ArrayList<>();
-            while (!peek("END") && !peek("LIST") && !peek("VAR")
-                    && !peek("VAL") && !peek("FUN") && !peek("ELSE")
-                    && !peek("CASE") && !peek("DEFAULT"))
-            {
-                block.add(parseStatement());
-            }
-            return block;
-        } catch (ParseException e){
-            throw new ParseException(e.getMessage(), e.getIndex());
-        }
+        return parseBlock(true);
+    }
+
+    /**
+     * Parses statements until {@link #endsBlock(boolean)}. In recovery mode,
+     * a statement in error is skipped up to and including its {@code ;}, or
+     * up to the end of the block.
+     */
+    private List<Ast.Statement> parseBlock(boolean branches) throws ParseException {
+        return parseStatements(new Nested(Token.Kind.DO, branches), null);
     }
 
     /**
@@ -296,199 +831,337 @@ public final class Parser {
      * statement, then it is an expression/assignment statement.
      */
     public Ast.Statement parseStatement() throws ParseException {
-        try {
-            if (peek("LET")){
-                match("LET");
-
-                return parseDeclarationStatement();
-            }
-            else if (peek("SWITCH")){
-                match("SWITCH");
-
-                return parseSwitchStatement();
-
-            }
-            else if (peek("IF")){
-                match("IF");
-
-                return parseIfStatement();
-
-            }
-            else if (peek("WHILE")){
-                match("WHILE");
-
-                return parseWhileStatement();
+        return parseStatements(new Nested(Token.Kind.NONE, false), statementKind()).get(0);
+    }
 
+    /**
+     * Parses blocks and the statements in them with an explicit stack of the
+     * blocks and compound statements being parsed, so nesting is only limited
+     * by memory rather than by the Java stack. Starting from the given block,
+     * its statements are returned once it ends. Starting from a single
+     * statement, whose keyword kind is given once matched or is {@code NONE}
+     * for expression statements, that statement is returned alone.
+     *
+     * A statement in error is abandoned along with any compound statements
+     * it is nested in up to the innermost block, which recovers from it as
+     * {@link #parseBlock(boolean)} describes.
+     */
+    private List<Ast.Statement> parseStatements(Nested root, Token.Kind first) throws ParseException {
+        List<Nested> stack = new ArrayList<>();
+        stack.add(root);
+        // A statement or block which was just parsed, to pass to the block or
+        // compound statement it belongs to.
+        Ast.Statement statement = first != null ? startStatement(stack, first) : null;
+        List<Ast.Statement> block = null;
+        while (true)
+        {
+            Nested top = stack.get(stack.size() - 1);
+            try
+            {
+                if (statement != null)
+                {
+                    top.statements.add(statement);
+                    statement = null;
+                    if (top == root && first != null)
+                    {
+                        return root.statements;
+                    }
+                }
+                else if (block != null)
+                {
+                    List<Ast.Statement> ended = block;
+                    block = null;
+                    statement = endBlock(stack, top, ended);
+                }
+                else if (endsBlock(top.branches))
+                {
+                    stack.remove(stack.size() - 1);
+                    if (top == root)
+                    {
+                        return root.statements;
+                    }
+                    block = top.statements;
+                }
+                else
+                {
+                    statement = startStatement(stack, statementKind());
+                }
             }
-            else if (peek("RETURN")){
-                match("RETURN");
-
-                return parseReturnStatement();
-
-            } else {
-                Ast.Expression expr1 = parseExpression();
-
-                if (!match("=")) {
-                    if (!match(";")) {
-                        throw new ParseException("Missing a closing semicolon", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-                    } else {
-                        return new Ast.Statement.Expression(expr1);
+            catch (ParseException e)
+            {
+                while (stack.get(stack.size() - 1).statements == null)
+                {
+                    stack.remove(stack.size() - 1);
+                }
+                top = stack.get(stack.size() - 1);
+                if (top == root && first != null)
+                {
+                    throw e;
+                }
+                recover(e);
+                if (!tokens.has(0))
+                {
+                    stack.remove(stack.size() - 1);
+                    if (top == root)
+                    {
+                        return root.statements;
                     }
+                    block = top.statements;
                 }
-                Ast.Expression expr2 = parseExpression();
-
-                if (!match(";")) {
-                    throw new ParseException("Missing a closing semicolon", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-                } else {
-                    return new Ast.Statement.Assignment(expr1, expr2);
+                while (tokens.has(0) && !endsBlock(top.branches) && !match(Token.Kind.SEMICOLON))
+                {
+                    tokens.advance();
                 }
             }
-
-        } catch (ParseException e){
-            throw new ParseException(e.getMessage(), e.getIndex());
         }
-
     }
 
-
     /**
-     * Parses a declaration statement from the {@code statement} rule. This
-     * method should only be called if the next tokens start a declaration
-     * statement, aka {@code LET}.
+     * Matches the keyword starting the next statement, returning its kind, or
+     * {@code NONE} for expression and assignment statements.
      */
-    public Ast.Statement.Declaration parseDeclarationStatement() throws ParseException {
-        try
+    private Token.Kind statementKind() {
+        switch (tokens.has(0) ? tokens.kind(0) : Token.Kind.NONE)
         {
-            if (!peek(Token.Type.IDENTIFIER))
-            {
-                throw new ParseException("Invalid LET Statement", tokens.get(-1).getIndex());
-            }
-            String name = tokens.get(0).getLiteral();
-            match(Token.Type.IDENTIFIER);
-
+            case LET:
+            case SWITCH:
+            case IF:
+            case WHILE:
+            case RETURN:
+                tokens.advance();
+                return tokens.kind(-1);
+            default:
+                return Token.Kind.NONE;
+        }
+    }
 
-            if (match(":", Token.Type.IDENTIFIER))
+    /**
+     * Parses a statement whose keyword of the given kind was matched. Simple
+     * statements are returned, while compound statements are pushed with
+     * their first block and null is returned.
+     */
+    private Ast.Statement startStatement(List<Nested> stack, Token.Kind kind) throws ParseException {
+        switch (kind)
+        {
+            case LET:
+                return parseDeclarationStatement();
+            case RETURN:
+                return parseReturnStatement();
+            case IF:
             {
-                String typeName = "";
-                typeName = tokens.get(-1).getLiteral();
-                Ast.Expression expr = null;
-
-                if (match("="))
+                Nested statement = new Nested(Token.Kind.IF, false);
+                statement.condition = parseExpression();
+                if (!match(Token.Kind.DO))
                 {
-                    expr = parseExpression();
+                    throw new ParseException("Missing DO", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
                 }
-
-                if (!match(";"))
+                stack.add(statement);
+                stack.add(new Nested(Token.Kind.DO, true));
+                return null;
+            }
+            case WHILE:
+            {
+                Nested statement = new Nested(Token.Kind.WHILE, false);
+                statement.condition = parseExpression();
+                if (!match(Token.Kind.DO))
                 {
-                    throw new ParseException("Missing Semicolon", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+                    throw new ParseException("Missing \"DO\"", tokens.get(-1).getIndex());
                 }
-
-                return new Ast.Statement.Declaration(name, Optional.of(typeName), Optional.ofNullable(expr));
+                stack.add(statement);
+                stack.add(new Nested(Token.Kind.DO, false));
+                return null;
             }
-            else
+            case SWITCH:
             {
-                Ast.Expression expr = null;
+                Nested statement = new Nested(Token.Kind.SWITCH, false);
+                statement.condition = parseExpression();
+                statement.cases = new ArrayList<>();
+                stack.add(statement);
+                startCase(stack, statement);
+                return null;
+            }
+            default:
+                return parseExpressionStatement();
+        }
+    }
 
-                if (match("="))
+    /**
+     * Passes a block which ended to the compound statement on top of the
+     * stack, returning the statement if it ended too, or otherwise pushing
+     * its next block and returning null.
+     */
+    private Ast.Statement endBlock(List<Nested> stack, Nested statement, List<Ast.Statement> block) throws ParseException {
+        switch (statement.kind)
+        {
+            case IF:
+                if (statement.then == null)
                 {
-                    expr = parseExpression();
+                    statement.then = block;
+                    if (match(Token.Kind.ELSE))
+                    {
+                        stack.add(new Nested(Token.Kind.DO, true));
+                        return null;
+                    }
+                    block = new ArrayList<>();
                 }
-
-                if (!match(";"))
+                if (!match(Token.Kind.END))
                 {
-                    throw new ParseException("Missing Semicolon", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+                    throw new ParseException("Missing END", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
                 }
-
-                return new Ast.Statement.Declaration(name, Optional.empty(), Optional.ofNullable(expr));
-            }
-            } catch (ParseException e){
-            throw new ParseException(e.getMessage(), e.getIndex());
+                stack.remove(stack.size() - 1);
+                return new Ast.Statement.If(statement.condition, statement.then, block);
+            case WHILE:
+                if (!match(Token.Kind.END))
+                {
+                    throw new ParseException("Missing END", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+                }
+                stack.remove(stack.size() - 1);
+                return new Ast.Statement.While(statement.condition, block);
+            default:
+                statement.cases.add(new Ast.Statement.Case(Optional.ofNullable(statement.value), block));
+                if (statement.value != null)
+                {
+                    startCase(stack, statement);
+                    return null;
+                }
+                if (!match(Token.Kind.END))
+                {
+                    throw new ParseException("Missing END", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+                }
+                stack.remove(stack.size() - 1);
+                return new Ast.Statement.Switch(statement.condition, statement.cases);
         }
     }
 
     /**
-     * Parses an if statement from the {@code statement} rule. This method
-     * should only be called if the next tokens start an if statement, aka
-     * {@code IF}.
+     * Parses the start of the next case or default of the switch statement,
+     * pushing its block.
      */
-    public Ast.Statement.If parseIfStatement() throws ParseException {
-        try
+    private void startCase(List<Nested> stack, Nested statement) throws ParseException {
+        if (match(Token.Kind.CASE))
         {
-            Ast.Expression condition = parseExpression();
-            if (!match("DO"))
+            statement.value = parseExpression();
+            if (!match(Token.Kind.COLON))
             {
-                throw new ParseException("Missing DO", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+                throw new ParseException("Missing colon", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
             }
+        }
+        else if (match(Token.Kind.DEFAULT))
+        {
+            statement.value = null;
+        }
+        else
+        {
+            throw new ParseException("Missing DEFAULT", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+        }
+        stack.add(new Nested(Token.Kind.DO, true));
+    }
 
-            List<Ast.Statement> then = parseBlock();
-            List<Ast.Statement> els = new ArrayList<>();
-            if (match("ELSE"))
-            {
-                els = parseBlock();
-            }
+    /**
+     * Parses an expression or assignment statement from the {@code statement}
+     * rule.
+     */
+    private Ast.Statement parseExpressionStatement() throws ParseException {
+        Ast.Expression expr1 = parseExpression();
 
-            if (!match("END"))
-            {
-                throw new ParseException("Missing END", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+        if (!match(Token.Kind.ASSIGN)) {
+            if (!match(Token.Kind.SEMICOLON)) {
+                throw new ParseException("Missing a closing semicolon", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+            } else {
+                return new Ast.Statement.Expression(expr1);
             }
+        }
+        Ast.Expression expr2 = parseExpression();
 
-            return new Ast.Statement.If(condition, then, els);
-        } catch (ParseException e){
-            throw new ParseException(e.getMessage(), e.getIndex());
+        if (!match(Token.Kind.SEMICOLON)) {
+            throw new ParseException("Missing a closing semicolon", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+        } else {
+            return new Ast.Statement.Assignment(expr1, expr2);
         }
     }
 
+
     /**
-     * Parses a switch statement from the {@code statement} rule. This method
-     * should only be called if the next tokens start a switch statement, aka
-     * {@code SWITCH}.
+     * Parses a declaration statement from the {@code statement} rule. This
+     * method should only be called if the next tokens start a declaration
+     * statement, aka {@code LET}.
      */
-    public Ast.Statement.Switch parseSwitchStatement() throws ParseException {
-        try
+    public Ast.Statement.Declaration parseDeclarationStatement() throws ParseException {
+        if (!peek(Token.Type.IDENTIFIER))
         {
-            Ast.Expression condition = parseExpression();
+            throw new ParseException("Invalid LET Statement", tokens.get(-1).getIndex());
+        }
+        String name = tokens.get(0).getLiteral();
+        match(Token.Type.IDENTIFIER);
+
+
+        if (match(Token.Kind.COLON, Token.Type.IDENTIFIER))
+        {
+            String typeName = "";
+            typeName = tokens.get(-1).getLiteral();
+            Ast.Expression expr = null;
 
-            List<Ast.Statement.Case> cases = new ArrayList<>();
-            while (match("CASE"))
+            if (match(Token.Kind.ASSIGN))
             {
-                cases.add(parseCaseStatement());
+                expr = parseExpression();
             }
 
-            if (!match("DEFAULT"))
+            if (!match(Token.Kind.SEMICOLON))
+            {
+                throw new ParseException("Missing Semicolon", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+            }
+
+            return new Ast.Statement.Declaration(name, Optional.of(typeName), Optional.ofNullable(expr));
+        }
+        else
+        {
+            Ast.Expression expr = null;
+
+            if (match(Token.Kind.ASSIGN))
             {
-                throw new ParseException("Missing DEFAULT", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+                expr = parseExpression();
             }
 
-            cases.add(new Ast.Statement.Case(Optional.empty(), parseBlock()));
-            if (!match("END"))
+            if (!match(Token.Kind.SEMICOLON))
             {
-                throw new ParseException("Missing END", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+                throw new ParseException("Missing Semicolon", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
             }
 
-            return new Ast.Statement.Switch(condition, cases);
-        } catch (ParseException e){
-            throw new ParseException(e.getMessage(), e.getIndex());
+            return new Ast.Statement.Declaration(name, Optional.empty(), Optional.ofNullable(expr));
         }
     }
 
+    /**
+     * Parses an if statement from the {@code statement} rule. This method
+     * should only be called if the next tokens start an if statement, aka
+     * {@code IF}.
+     */
+    public Ast.Statement.If parseIfStatement() throws ParseException {
+        return (Ast.Statement.If) parseStatements(new Nested(Token.Kind.NONE, false), Token.Kind.IF).get(0);
+    }
+
+    /**
+     * Parses a switch statement from the {@code statement} rule. This method
+     * should only be called if the next tokens start a switch statement, aka
+     * {@code SWITCH}.
+     */
+    public Ast.Statement.Switch parseSwitchStatement() throws ParseException {
+        return (Ast.Statement.Switch) parseStatements(new Nested(Token.Kind.NONE, false), Token.Kind.SWITCH).get(0);
+    }
+
     /**
      * Parses a case or default statement block from the {@code switch} rule.
      * This method should only be called if the next tokens start the case or
      * default block of a switch statement, aka {@code CASE} or {@code DEFAULT}.
      */
     public Ast.Statement.Case parseCaseStatement() throws ParseException {
-        try
+        List<Ast.Statement> states = new ArrayList<>();
+        Ast.Expression exp = parseExpression();
+        if (!match(Token.Kind.COLON))
         {
-            List<Ast.Statement> states = new ArrayList<>();
-            Ast.Expression exp = parseExpression();
-            if (!match(":"))
-            {
-                throw new ParseException("Missing colon", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            }
-            return new Ast.Statement.Case(Optional.of(exp), parseBlock());
-        } catch (ParseException e){
-            throw new ParseException(e.getMessage(), e.getIndex());
+            throw new ParseException("Missing colon", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
         }
+        return new Ast.Statement.Case(Optional.of(exp), parseBlock());
     }
 
     /**
@@ -497,30 +1170,7 @@ public final class Parser {
      * {@code WHILE}.
      */
     public Ast.Statement.While parseWhileStatement() throws ParseException {
-        try
-        {
-            Ast.Expression exp = parseExpression();
-            if (!match("DO"))
-            {
-                throw new ParseException("Missing \"DO\"", tokens.get(-1).getIndex());
-            }
-            List<Ast.Statement> block = new ArrayList<>();
-            while (!peek("END") && !peek("LIST") && !peek("VAR")
-                    && !peek("VAL") && !peek("FUN"))
-            {
-                block.add(parseStatement());
-            }
-
-            if (!match("END"))
-            {
-                throw new ParseException("Missing END", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            }
-
-
-            return new Ast.Statement.While(exp, block);
-        } catch (ParseException e){
-            throw new ParseException(e.getMessage(), e.getIndex());
-        }
+        return (Ast.Statement.While) parseStatements(new Nested(Token.Kind.NONE, false), Token.Kind.WHILE).get(0);
     }
 
     /**
@@ -529,133 +1179,182 @@ public final class Parser {
      * {@code RETURN}.
      */
     public Ast.Statement.Return parseReturnStatement() throws ParseException {
-        try
+        Ast.Statement.Return ret = new Ast.Statement.Return(parseExpression());
+        if (!match(Token.Kind.SEMICOLON))
         {
-            Ast.Statement.Return ret = new Ast.Statement.Return(parseExpression());
-            if (!match(";"))
-            {
-                throw new ParseException("Missing a closing semicolon", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            }
-            return ret;
-        } catch (ParseException e){
-            throw new ParseException(e.getMessage(), e.getIndex());
+            throw new ParseException("Missing a closing semicolon", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
         }
+        return ret;
     }
 
     /**
      * Parses the {@code expression} rule.
      */
     public Ast.Expression parseExpression() throws ParseException {
-        try {
-            return parseLogicalExpression();
-        } catch (ParseException e){
-            throw new ParseException(e.getMessage(), e.getIndex());
-        }
+        return parseBinaryExpression(LOGICAL);
     }
 
     /**
      * Parses the {@code logical-expression} rule.
      */
     public Ast.Expression parseLogicalExpression() throws ParseException {
-        try {
-            Ast.Expression comp_exp1 = parseComparisonExpression();
-
-            while (peek("&&") || peek("||")) {
-                if (match("&&")) ;
-                else match("||");
-
-                String logical_operation = tokens.get(-1).getLiteral();
-
-                Ast.Expression comp_exp2 = parseComparisonExpression();
-
-                comp_exp1 = new Ast.Expression.Binary(logical_operation, comp_exp1, comp_exp2);
-            }
-
-            return comp_exp1;
-        } catch (ParseException e){
-            throw new ParseException(e.getMessage(), e.getIndex());
-        }
-
-
+        return parseBinaryExpression(LOGICAL);
     }
 
     /**
      * Parses the {@code equality-expression} rule.
      */
     public Ast.Expression parseComparisonExpression() throws ParseException {
-        try {
-            Ast.Expression add1 = parseAdditiveExpression();
-
-            while (peek("<") || peek(">") || peek("==") || peek("!=")) {
-                if (match("<"));
-                else if (match(">"));
-                else if (match("=="));
-                else match("!=");
-
-                String comp_operation = tokens.get(-1).getLiteral();
-
-                Ast.Expression add2 = parseAdditiveExpression();
-
-                add1 = new Ast.Expression.Binary(comp_operation, add1, add2);
-            }
-
-            return add1;
-
-        } catch (ParseException e){
-            throw new ParseException(e.getMessage(), e.getIndex());
-        }
+        return parseBinaryExpression(COMPARISON);
     }
 
     /**
      * Parses the {@code additive-expression} rule.
      */
     public Ast.Expression parseAdditiveExpression() throws ParseException {
-        try {
-            Ast.Expression mult_expr1 = parseMultiplicativeExpression();
-
-            while (peek("+") || peek("-")) {
-                if (match("+")) ;
-                else match("-");
-
-                String additive_operation = tokens.get(-1).getLiteral();
-
-                Ast.Expression mult_expr2 = parseMultiplicativeExpression();
-
-                mult_expr1 = new Ast.Expression.Binary(additive_operation, mult_expr1, mult_expr2);
-
-            }
-            return mult_expr1;
-        } catch (ParseException e){
-            throw new ParseException(e.getMessage(), e.getIndex());
-        }
-
+        return parseBinaryExpression(ADDITIVE);
     }
 
-
-
     /**
      * Parses the {@code multiplicative-expression} rule.
      */
     public Ast.Expression parseMultiplicativeExpression() throws ParseException {
-        try {
-            Ast.Expression primary_expr1 = parsePrimaryExpression();
-
-            while (peek("*") || peek("/") || peek("^")) {
-                if (match("*")) ;
-                else if (match("/")) ;
-                else match("^");
-
-                String mult_operation = tokens.get(-1).getLiteral();
-
-                Ast.Expression primary_expr2 = parsePrimaryExpression();
+        return parseBinaryExpression(MULTIPLICATIVE);
+    }
 
-                primary_expr1 = new Ast.Expression.Binary(mult_operation, primary_expr1, primary_expr2);
+    /**
+     * Parses a chain of binary operators binding at least as tightly as the
+     * given precedence, using precedence climbing over {@link #PRECEDENCE}.
+     * The right operand of each operator only takes operators binding more
+     * tightly, which makes every operator left associative.
+     *
+     * Rather than recursing for every operand, the operators waiting for
+     * their right operand and the calls, accesses and groups waiting for
+     * their closing token are kept on an explicit stack of {@link Operand}s,
+     * so nesting is only limited by memory. Each operand which was parsed is
+     * passed down the stack until it completes an expression still waiting
+     * for further operands.
+     */
+    private Ast.Expression parseBinaryExpression(int minimum) throws ParseException {
+        depth = 0;
+        push(Operand.BINARY).minimum = minimum;
+        while (true)
+        {
+            Ast.Expression value = parseOperand();
+            while (value != null)
+            {
+                Operand operand = operands.get(depth - 1);
+                if (operand.kind == Operand.BINARY)
+                {
+                    if (operand.left != null)
+                    {
+                        value = intern(new Ast.Expression.Binary(operand.operator, operand.left, value));
+                    }
+                    int precedence = tokens.has(0) ? PRECEDENCE[tokens.kind(0).ordinal()] : 0;
+                    if (precedence < operand.minimum)
+                    {
+                        pop();
+                        if (depth == 0)
+                        {
+                            return value;
+                        }
+                        continue;
+                    }
+                    operand.left = value;
+                    operand.operator = OPERATORS[tokens.kind(0).ordinal()];
+                    tokens.advance();
+                    push(Operand.BINARY).minimum = precedence + 1;
+                    value = null;
+                }
+                else if (operand.kind == Operand.CALL)
+                {
+                    operand.arguments.add(value);
+                    if (match(Token.Kind.COMMA))
+                    {
+                        push(Operand.BINARY).minimum = LOGICAL;
+                        value = null;
+                    }
+                    else if (match(Token.Kind.RIGHT_PAREN))
+                    {
+                        value = new Ast.Expression.Function(operand.name, operand.arguments);
+                        pop();
+                    }
+                    else
+                    {
+                        throw new ParseException("Missing Parenthesis", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+                    }
+                }
+                else if (operand.kind == Operand.INDEX)
+                {
+                    if (!match(Token.Kind.RIGHT_BRACKET))
+                    {
+                        throw new ParseException("Missing Bracket", tokens.get(-1).getIndex());
+                    }
+                    value = new Ast.Expression.Access(Optional.of(value), operand.name);
+                    pop();
+                }
+                else
+                {
+                    if (!match(Token.Kind.RIGHT_PAREN))
+                    {
+                        throw new ParseException("Missing Parenthesis", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
+                    }
+                    value = intern(new Ast.Expression.Group(value));
+                    pop();
+                }
+            }
+        }
+    }
 
+    /**
+     * Parses the start of the next operand. Literals and plain accesses are
+     * returned, while calls, indexed accesses and groups are pushed with an
+     * expression for their first argument, index or contents, returning null.
+     */
+    private Ast.Expression parseOperand() throws ParseException {
+        if (peek(Token.Kind.NIL) || peek(Token.Kind.TRUE) || peek(Token.Kind.FALSE) ||
+                peek(Token.Type.INTEGER) || peek(Token.Type.DECIMAL) ||
+                peek(Token.Type.CHARACTER) || peek(Token.Type.STRING)) {
+            return literals();
+        } else if (match(Token.Type.IDENTIFIER)) {
+            String ident = tokens.get(-1).getLiteral();
+            if (match(Token.Kind.LEFT_PAREN)) {
+                if (match(Token.Kind.RIGHT_PAREN)) {
+                    return new Ast.Expression.Function(ident, new ArrayList<>());
+                }
+                Operand call = push(Operand.CALL);
+                call.name = ident;
+                call.arguments = new ArrayList<>();
+            } else if (match(Token.Kind.LEFT_BRACKET)) {
+                push(Operand.INDEX).name = ident;
+            } else {
+                return new Ast.Expression.Access(Optional.empty(), ident);
             }
-            return primary_expr1;
-        } catch (ParseException e){
-            throw new ParseException(e.getMessage(), e.getIndex());
+        } else if (match(Token.Kind.LEFT_PAREN)) {
+            push(Operand.GROUP);
+        } else {
+            throw new ParseException("Invalid Expression", tokens.get(-1).getIndex());
+        }
+        push(Operand.BINARY).minimum = LOGICAL;
+        return null;
+    }
+
+    private Operand push(int kind) {
+        if (depth == operands.size())
+        {
+            operands.add(new Operand());
         }
+        Operand operand = operands.get(depth++);
+        operand.kind = kind;
+        operand.left = null;
+        return operand;
+    }
+
+    private void pop() {
+        Operand operand = operands.get(--depth);
+        operand.left = null;
+        operand.name = null;
+        operand.arguments = null;
     }
 
     /**
@@ -666,188 +1365,437 @@ public final class Parser {
      */
     public String replaceEscape(String lit)
     {
-        lit = lit.replace("\\n", "\n");
-        lit = lit.replace("\\b", "\b");
-        lit = lit.replace("\\r", "\r");
-        lit = lit.replace("\\t", "\t");
-        lit = lit.replace("\\\\", "\\");
-        lit = lit.replace("\\'", "\'");
-        lit = lit.replace("\\\"", "\"");
-        return lit;
+        return Token.unescape(lit, 0, lit.length());
     }
     public Ast.Expression.Literal literals()
     {
-        if (match("NIL"))
+        if (match(Token.Kind.NIL))
+        {
+            return intern(new Ast.Expression.Literal(null));
+        }
+        else if (match(Token.Kind.TRUE))
+        {
+            return intern(new Ast.Expression.Literal(Boolean.TRUE));
+        }
+        else if (match(Token.Kind.FALSE))
         {
-            return new Ast.Expression.Literal(null);
+            return intern(new Ast.Expression.Literal(Boolean.FALSE));
         }
-        else if (match("TRUE"))
+        tokens.advance();
+        return intern(new Ast.Expression.Literal(tokens.get(-1).getValue()));
+    }
+    public Ast.Expression parsePrimaryExpression() throws ParseException {
+        return parseBinaryExpression(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the shared instance of the given expression if interning is on
+     * and it can be shared, see {@link #setInterning(boolean)}, or otherwise
+     * the expression itself.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends Ast.Expression> T intern(T expression) {
+        if (interned == null)
         {
-            return new Ast.Expression.Literal(Boolean.TRUE);
+            return expression;
         }
-        else if (match("FALSE"))
+        Interned key;
+        if (expression instanceof Ast.Expression.Literal)
         {
-            new Ast.Expression.Literal(Boolean.FALSE);
+            key = new Interned(Ast.Expression.Literal.class, ((Ast.Expression.Literal) expression).getLiteral(), null, null);
         }
-        else if (match(Token.Type.INTEGER))
+        else if (expression instanceof Ast.Expression.Group && shared.contains(((Ast.Expression.Group) expression).getExpression()))
         {
-            return new Ast.Expression.Literal(new BigInteger(tokens.get(-1).getLiteral()));
+            key = new Interned(Ast.Expression.Group.class, null, ((Ast.Expression.Group) expression).getExpression(), null);
         }
-        else if (match(Token.Type.DECIMAL))
+        else if (expression instanceof Ast.Expression.Binary
+                && shared.contains(((Ast.Expression.Binary) expression).getLeft())
+                && shared.contains(((Ast.Expression.Binary) expression).getRight()))
         {
-            return new Ast.Expression.Literal(new BigDecimal(tokens.get(-1).getLiteral()));
+            Ast.Expression.Binary binary = (Ast.Expression.Binary) expression;
+            key = new Interned(Ast.Expression.Binary.class, binary.getOperator(), binary.getLeft(), binary.getRight());
         }
-        else if (match(Token.Type.CHARACTER))
+        else
         {
-            String liter = tokens.get(-1).getLiteral();
-            return new Ast.Expression.Literal(liter.charAt(1));
+            return expression;
+        }
+        T result = (T) interned.computeIfAbsent(key, k -> expression);
+        shared.add(result);
+        return result;
+    }
+
+    /**
+     * Returns true if the next token ends a block: {@code END} or the start of
+     * a global or function, and if {@code branches} is set also {@code ELSE},
+     * {@code CASE} or {@code DEFAULT}.
+     */
+    private boolean endsBlock(boolean branches) {
+        if (!tokens.has(0))
+        {
+            return false;
+        }
+        switch (tokens.kind(0))
+        {
+            case END:
+            case LIST:
+            case VAR:
+            case VAL:
+            case FUN:
+                return true;
+            case ELSE:
+            case CASE:
+            case DEFAULT:
+                return branches;
+            default:
+                return false;
         }
-        match(Token.Type.STRING);
-        String result = tokens.get(-1).getLiteral();
-        result = replaceEscape(result);
-        result = result.substring(1, result.length() - 1);
-        return new Ast.Expression.Literal(result);
     }
-    public Ast.Expression parsePrimaryExpression() throws ParseException {
-        if (peek("NIL") || peek("TRUE") || peek("FALSE") ||
-                peek(Token.Type.INTEGER) || peek(Token.Type.DECIMAL) ||
-                peek(Token.Type.CHARACTER) || peek(Token.Type.STRING)) {
-            return literals();
-        } else if (match(Token.Type.IDENTIFIER)) {
-            String ident = tokens.get(-1).getLiteral();
-            if (!peek("(") && !peek("[")) {
-                return new Ast.Expression.Access(Optional.empty(), ident);
-            } else {
-               if (match("(")) {
 
-                    if (!match(")")) {
-                        Ast.Expression expr1 = parseExpression();
-                        List<Ast.Expression> expressions = new ArrayList<>();
-                        expressions.add(expr1);
+    /**
+     * Returns {@code true} if the token at the given offset has the given
+     * kind. Unlike the lexer's varargs patterns, these fixed-arity helpers
+     * never allocate, and longer patterns are written as a chain of them.
+     */
+    private boolean peek(int offset, Token.Kind kind) {
+        return tokens.has(offset) && tokens.kind(offset) == kind;
+    }
 
-                        while (peek(",")) {
-                            match(",");
-                            Ast.Expression argument = parseExpression();
-                            expressions.add(argument);
-                        }
+    /**
+     * Returns {@code true} if the token at the given offset has the given
+     * type.
+     */
+    private boolean peek(int offset, Token.Type type) {
+        return tokens.has(offset) && tokens.type(offset) == type;
+    }
 
-                        if (peek(")")) {
-                            match(")");
-                            return new Ast.Expression.Function(ident, expressions);
-                        } else {
-                            throw new ParseException("Missing Parenthesis", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-                        }
-                    } else {
-                        if (!tokens.get(-1).getLiteral().equals(")")) {
-                            throw new ParseException("Missing Parenthesis", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-                        } else {
-                            return new Ast.Expression.Function(ident, new ArrayList<>());
-                        }
-                    }
-                } else {
-                   match("[");
+    private boolean peek(Token.Kind kind) {
+        return peek(0, kind);
+    }
 
-                   Ast.Expression list_element = parseExpression();
+    private boolean peek(Token.Type type) {
+        return peek(0, type);
+    }
 
-                   if (!match("]")){
-                       throw new ParseException("Missing Bracket", tokens.get(-1).getIndex());
-                   }
+    /**
+     * Returns {@code true} if the next tokens are the given kind followed by
+     * the given type, such as the {@code : Type} of a declaration.
+     */
+    private boolean peek(Token.Kind kind, Token.Type type) {
+        return peek(0, kind) && peek(1, type);
+    }
 
-                   Ast.Expression.Access result = new Ast.Expression.Access(Optional.of(list_element), ident);
+    /**
+     * As in the lexer, returns {@code true} if the corresponding peek is true
+     * and advances the token stream past the matched tokens.
+     */
+    private boolean match(Token.Kind kind) {
+        boolean peek = peek(kind);
+        if (peek)
+        {
+            tokens.advance();
+        }
+        return peek;
+    }
 
-                   return result;
-                }
+    private boolean match(Token.Type type) {
+        boolean peek = peek(type);
+        if (peek)
+        {
+            tokens.advance();
+        }
+        return peek;
+    }
 
-            }
+    private boolean match(Token.Kind kind, Token.Type type) {
+        boolean peek = peek(kind, type);
+        if (peek)
+        {
+            tokens.advance();
+            tokens.advance();
+        }
+        return peek;
+    }
 
-        } else if (peek("(")) {
-            match("(");
-            Ast.Expression expr1 = parseExpression();
-            if (!match(")")) {
-                throw new ParseException("Missing Parenthesis", tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length());
-            }
-            return new Ast.Expression.Group(expr1);
-        } else {
-            throw new ParseException("Invalid Expression", tokens.get(-1).getIndex());
+    /**
+     * The key of a shared expression: its class, its literal or operator and
+     * its operands, which are compared by identity since they are already
+     * shared. This keeps interning constant time at every level, rather than
+     * comparing whole subtrees.
+     */
+    private static final class Interned {
+
+        private final Class<?> type;
+        private final Object value;
+        private final Ast.Expression left;
+        private final Ast.Expression right;
+
+        private Interned(Class<?> type, Object value, Ast.Expression left, Ast.Expression right) {
+            this.type = type;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Interned
+                    && type == ((Interned) obj).type
+                    && Objects.equals(value, ((Interned) obj).value)
+                    && left == ((Interned) obj).left
+                    && right == ((Interned) obj).right;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((type.hashCode() * 31 + Objects.hashCode(value)) * 31
+                    + System.identityHashCode(left)) * 31 + System.identityHashCode(right);
         }
+
     }
 
     /**
-     * As in the lexer, returns {@code true} if the current sequence of tokens
-     * matches the given patterns. Unlike the lexer, the pattern is not a regex;
-     * instead it is either a {@link Token.Type}, which matches if the token's
-     * type is the same, or a {@link String}, which matches if the token's
-     * literal is the same.
-     *
-     * In other words, {@code Token(IDENTIFIER, "literal")} is matched by both
-     * {@code peek(Token.Type.IDENTIFIER)} and {@code peek("literal")}.
+     * A block or compound statement being parsed, see {@link
+     * #parseStatements(Nested, Token.Kind)}. Blocks have the kind {@code DO},
+     * or {@code NONE} for a statement parsed on its own, and collect their
+     * statements. {@code IF}, {@code WHILE} and {@code SWITCH} statements
+     * keep the parts parsed so far, with the value of the current case of a
+     * switch being null for its default.
      */
-    private boolean peek(Object... patterns) {
-        for (int i = 0; i < patterns.length; i++)
-        {
-            if (!tokens.has(i))
-            {
-                return false;
-            }
-            else if (patterns[i] instanceof Token.Type)
+    private static final class Nested {
+
+        private final Token.Kind kind;
+        private final boolean branches;
+        private final List<Ast.Statement> statements;
+        private Ast.Expression condition;
+        private List<Ast.Statement> then;
+        private List<Ast.Statement.Case> cases;
+        private Ast.Expression value;
+
+        private Nested(Token.Kind kind, boolean branches) {
+            this.kind = kind;
+            this.branches = branches;
+            this.statements = kind == Token.Kind.DO || kind == Token.Kind.NONE ? new ArrayList<>() : null;
+        }
+
+    }
+
+    /**
+     * An expression waiting for further operands, see {@link
+     * #parseBinaryExpression(int)}: a chain of binary operators binding at
+     * least as tightly as {@code minimum}, with the operand to the left of
+     * the pending operator, or a call, indexed access or group of the given
+     * name waiting for the rest of its arguments, its index or its contents.
+     */
+    private static final class Operand {
+
+        private static final int BINARY = 0;
+        private static final int CALL = 1;
+        private static final int INDEX = 2;
+        private static final int GROUP = 3;
+
+        private int kind;
+        private int minimum;
+        private Ast.Expression left;
+        private String operator;
+        private String name;
+        private List<Ast.Expression> arguments;
+
+    }
+
+    /**
+     * The integers or decimals of a list literal packed so far, reusing its
+     * arrays from one list to the next. Integers outside a {@code long} and
+     * decimals which do not convert to a {@code double} and back exactly,
+     * including their scale, are not packed.
+     */
+    private static final class Packing {
+
+        private long[] integers = new long[0];
+        private double[] decimals = new double[0];
+        private boolean decimal;
+        private int size;
+
+        private void clear(boolean decimal) {
+            this.decimal = decimal;
+            this.size = 0;
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private boolean add(Object value) {
+            if (decimal)
             {
-                if (patterns[i] != tokens.get(i).getType())
+                double number = ((BigDecimal) value).doubleValue();
+                if (!BigDecimal.valueOf(number).equals(value))
                 {
                     return false;
                 }
-            }
-            else if (patterns[i] instanceof String)
-            {
-                if (!patterns[i].equals(tokens.get(i).getLiteral()))
+                if (size == decimals.length)
                 {
-                    return false;
+                    decimals = Arrays.copyOf(decimals, Math.max(16, 2 * size));
                 }
+                decimals[size++] = number;
             }
             else
             {
-                throw new AssertionError("Invalid pattern object: " +
-                        patterns[i].getClass());
+                if (((BigInteger) value).bitLength() >= Long.SIZE)
+                {
+                    return false;
+                }
+                if (size == integers.length)
+                {
+                    integers = Arrays.copyOf(integers, Math.max(16, 2 * size));
+                }
+                integers[size++] = ((BigInteger) value).longValue();
             }
+            return true;
+        }
+
+        private Object get(int index) {
+            return decimal ? BigDecimal.valueOf(decimals[index]) : BigInteger.valueOf(integers[index]);
         }
-        return true;
+
+        private Ast.Expression.PlcList toList() {
+            return decimal
+                    ? new Ast.Expression.PlcList(Arrays.copyOf(decimals, size))
+                    : new Ast.Expression.PlcList(Arrays.copyOf(integers, size));
+        }
+
     }
 
     /**
-     * As in the lexer, returns {@code true} if {@link #peek(Object...)} is true
-     * and advances the token stream.
+     * The statements of a lazy function body, parsed on first access.
      */
-    private boolean match(Object... patterns) {
-        boolean peek = peek(patterns);
-        if (peek)
-        {
-            for (int i = 0; i < patterns.length; i++)
-            {
-                tokens.advance();
+    private static final class Body extends AbstractList<Ast.Statement> {
+
+        private Parser parser;
+        private final int end;
+        private List<Ast.Statement> statements;
+
+        private Body(Parser parser, int end) {
+            this.parser = parser;
+            this.end = end;
+        }
+
+        private List<Ast.Statement> statements() {
+            if (statements == null) {
+                statements = parser.parseBody(end);
+                parser = null;
             }
+            return statements;
         }
-        return peek;
+
+        @Override
+        public Ast.Statement get(int index) {
+            return statements().get(index);
+        }
+
+        @Override
+        public int size() {
+            return statements().size();
+        }
+
     }
+
+    /**
+     * Token access for the parser, backed by a list, a {@link TokenBuffer}, or
+     * a window over a token iterator. The window must hold the previous token,
+     * used for error indices, along with the current token and the four after
+     * it, the longest lookahead of the parser being {@code peek(4, ...)} in
+     * {@link #parseList()}. Filling up to that lookahead overwrites the slot
+     * the previous token is in unless there are at least six slots, rounded
+     * up to eight.
+     */
     private static final class TokenStream {
 
+        private static final int WINDOW = 8;
+
         private final List<Token> tokens;
+        private final TokenBuffer buffer;
+        private final Iterator<Token> source;
+        private final Token[] window;
         private int index = 0;
+        private int size = 0;
 
         private TokenStream(List<Token> tokens) {
             this.tokens = tokens;
+            this.buffer = null;
+            this.source = null;
+            this.window = null;
+        }
+
+        private TokenStream(TokenBuffer buffer) {
+            this.tokens = null;
+            this.buffer = buffer;
+            this.source = null;
+            this.window = null;
+        }
+
+        private TokenStream(Iterator<Token> source) {
+            this.tokens = null;
+            this.buffer = null;
+            this.source = source;
+            this.window = new Token[WINDOW];
+        }
+
+        /**
+         * Returns true if all tokens are kept, rather than only a window of
+         * them from an iterator.
+         */
+        public boolean kept() {
+            return source == null;
+        }
+
+        /**
+         * Returns a stream over the same kept tokens at the given index.
+         */
+        public TokenStream from(int index) {
+            TokenStream stream = tokens != null ? new TokenStream(tokens) : new TokenStream(buffer);
+            stream.index = index;
+            return stream;
         }
 
         /**
          * Returns true if there is a token at index + offset.
          */
         public boolean has(int offset) {
-            return index + offset < tokens.size();
+            if (tokens != null) {
+                return index + offset < tokens.size();
+            } else if (buffer != null) {
+                return index + offset < buffer.size();
+            }
+            while (size <= index + offset && source.hasNext()) {
+                window[size++ % WINDOW] = source.next();
+            }
+            return index + offset < size;
         }
 
         /**
          * Gets the token at index + offset.
          */
         public Token get(int offset) {
-            return tokens.get(index + offset);
+            if (tokens != null) {
+                return tokens.get(index + offset);
+            } else if (buffer != null) {
+                return buffer.get(index + offset);
+            }
+            return window[Math.floorMod(index + offset, WINDOW)];
+        }
+
+        /**
+         * Gets the type of the token at index + offset.
+         */
+        public Token.Type type(int offset) {
+            return buffer != null ? buffer.getType(index + offset) : get(offset).getType();
+        }
+
+        /**
+         * Gets the keyword or operator kind of the token at index + offset.
+         */
+        public Token.Kind kind(int offset) {
+            return buffer != null ? buffer.getKind(index + offset) : get(offset).getKind();
         }
 
         /**
@@ -859,4 +1807,4 @@ public final class Parser {
 
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,249 @@
+package plc.project;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lexes and parses a source at the same time, with the {@link Lexer} running
+ * on another thread and passing its tokens to the {@link Parser} through a
+ * bounded ring buffer.
+ *
+ * The buffer has a single producer and a single consumer, so each side only
+ * writes its own position and no locks are needed. Tokens are published in
+ * batches to keep the two threads from contending on every token, and a side
+ * which finds the buffer full (or empty) spins briefly before parking until
+ * the other side catches up. An exception thrown by the lexer is rethrown
+ * by the parser once it reaches the tokens the lexer could not produce. If
+ * the parser fails first, the rest of the source is still lexed, so the
+ * reported {@link ParseException} is the same as lexing the whole source
+ * before parsing it.
+ */
+public final class PipelinedParser {
+
+    /**
+     * Sources shorter than this are lexed and parsed sequentially.
+     */
+    private static final int MINIMUM_SOURCE = 1 << 16;
+
+    private static final int CAPACITY = 1 << 14;
+    private static final int BATCH = 1 << 8;
+
+    /**
+     * How many tokens to publish before waking a parked side, so it runs
+     * for a while once woken rather than after every batch.
+     */
+    private static final int WAKE = CAPACITY / 2;
+
+    /**
+     * How often to check the other side before parking, which is pointless
+     * if the other side cannot run at the same time.
+     */
+    private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 1 << 8 : 0;
+
+    private PipelinedParser() {}
+
+    /**
+     * Parses the source, pipelined on a new thread if it is large enough and
+     * there is a processor to run it on.
+     */
+    public static Ast.Source parse(String source) {
+        if (source.length() < MINIMUM_SOURCE || Runtime.getRuntime().availableProcessors() < 2) {
+            return new Parser(new Lexer(source).lex()).parseSource();
+        }
+        return parse(new Lexer(source), PipelinedParser::start);
+    }
+
+    /**
+     * Parses the tokens of the lexer while running it on the given executor,
+     * producing the same source (or exception) as parsing the result of
+     * {@link Lexer#lex()}. The executor must run the lexer concurrently with
+     * the calling thread, such as on a thread of its own.
+     */
+    public static Ast.Source parse(Lexer lexer, Executor executor) {
+        Pipe pipe = new Pipe(lexer);
+        executor.execute(pipe);
+        try {
+            return new Parser(pipe).parseSource();
+        } catch (ParseException e) {
+            throw pipe.drain(e);
+        }
+    }
+
+    private static void start(Runnable runnable) {
+        Thread thread = new Thread(runnable, "plc-lexer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * The ring buffer, filled by the lexer through {@link #run()} and read by
+     * the parser as an {@link Iterator}. Positions only increase, and the slot
+     * of a position is its remainder by the capacity.
+     */
+    private static final class Pipe implements Iterator<Token>, Runnable {
+
+        private final Lexer lexer;
+        private final Token[] ring = new Token[CAPACITY];
+
+        /**
+         * The positions published by each side: tokens before tail have been
+         * written, and those before head have been read.
+         */
+        private volatile long tail = 0;
+        private volatile long head = 0;
+
+        /**
+         * Set once the lexer stopped, after its last tail and error.
+         */
+        private volatile boolean done = false;
+        private volatile RuntimeException error;
+
+        /**
+         * Set by the parser once it failed, after which tokens are discarded.
+         */
+        private volatile boolean draining = false;
+
+        /**
+         * The thread parked waiting for the other side, if any.
+         */
+        private volatile Thread producer;
+        private volatile Thread consumer;
+
+        /**
+         * The consumer's own read position and the last tail it has seen.
+         */
+        private long read = 0;
+        private long available = 0;
+
+        private Pipe(Lexer lexer) {
+            this.lexer = lexer;
+        }
+
+        @Override
+        public void run() {
+            long write = 0;
+            long free = CAPACITY;
+            try {
+                while (lexer.hasNext()) {
+                    Token token = lexer.lexToken();
+                    if (draining) {
+                        continue;
+                    }
+                    if (write == free) {
+                        tail = write;
+                        wake(consumer);
+                        free = awaitSpace(write) + CAPACITY;
+                    }
+                    ring[(int) write & (CAPACITY - 1)] = token;
+                    if (++write % BATCH == 0) {
+                        tail = write;
+                        if (write % WAKE == 0) {
+                            wake(consumer);
+                        }
+                    }
+                }
+            } catch (RuntimeException e) {
+                error = e;
+            }
+            tail = write;
+            done = true;
+            wake(consumer);
+        }
+
+        /**
+         * Waits until the consumer has read past the given position, or the
+         * consumer failed, and returns its position.
+         */
+        private long awaitSpace(long write) {
+            long read = head;
+            for (int spins = 0; read + CAPACITY == write && !draining; spins++) {
+                if (spins < SPINS) {
+                    Thread.onSpinWait();
+                } else {
+                    producer = Thread.currentThread();
+                    if (head + CAPACITY == write && !draining) {
+                        LockSupport.park(this);
+                    }
+                    producer = null;
+                }
+                read = head;
+            }
+            return read;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (read < available) {
+                return true;
+            }
+            head = read;
+            wake(producer);
+            for (int spins = 0; ; spins++) {
+                boolean finished = done;
+                available = tail;
+                if (read < available) {
+                    return true;
+                } else if (finished) {
+                    if (error != null) {
+                        throw error;
+                    }
+                    return false;
+                } else if (spins < SPINS) {
+                    Thread.onSpinWait();
+                } else {
+                    consumer = Thread.currentThread();
+                    if (tail == read && !done) {
+                        LockSupport.park(this);
+                    }
+                    consumer = null;
+                }
+            }
+        }
+
+        @Override
+        public Token next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            int slot = (int) read & (CAPACITY - 1);
+            Token token = ring[slot];
+            ring[slot] = null;
+            if (++read % BATCH == 0) {
+                head = read;
+                if (read % WAKE == 0) {
+                    wake(producer);
+                }
+            }
+            return token;
+        }
+
+        /**
+         * Stops the lexer from publishing after the parser failed with the
+         * given exception, and returns the exception to report once the rest
+         * of the source has been lexed: the lexer's own if it failed too,
+         * since it fails on a later token than the parser has seen.
+         */
+        private RuntimeException drain(ParseException exception) {
+            draining = true;
+            wake(producer);
+            while (!done) {
+                consumer = Thread.currentThread();
+                if (!done) {
+                    LockSupport.park(this);
+                }
+                consumer = null;
+            }
+            return error != null ? error : exception;
+        }
+
+        private static void wake(Thread thread) {
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,596 @@
+package plc.project;
+
+import java.util.Arrays;
+
+/**
+ * Checks that a source follows the grammar of the {@link Parser} without
+ * building an AST, throwing the same {@link ParseException} as lexing the
+ * source and parsing its tokens would.
+ *
+ * The recognizer mirrors the parse methods rule by rule, down to the message
+ * and index of every error, but only consumes tokens. Tokens are scanned
+ * straight from the {@link Lexer} into a small window of arrays, so neither
+ * {@link Token} objects, literal values nor a list of the tokens are ever
+ * created. As the parser only sees the tokens once the whole source is
+ * lexed, a syntax error is only thrown once the rest of the source has been
+ * lexed without error.
+ */
+public final class Recognizer {
+
+    /**
+     * The number of tokens kept around the current one, which must cover
+     * the one before it and the longest lookahead of the grammar.
+     */
+    private static final int WINDOW = 8;
+
+    /**
+     * The kinds of blocks and compound statements on the stack of nested
+     * statements: blocks ended by {@code ELSE}, {@code CASE} and {@code
+     * DEFAULT} or not, if statements before or after their {@code ELSE}, while
+     * statements, and switch statements in a case or in their default.
+     */
+    private static final int BRANCHES = 0;
+    private static final int PLAIN = 1;
+    private static final int IF = 2;
+    private static final int ELSE = 3;
+    private static final int WHILE = 4;
+    private static final int CASE = 5;
+    private static final int SWITCH = 6;
+
+    /**
+     * The kinds of operands on the stack of operands: operators waiting for
+     * their right operand, and calls, indexed accesses and groups.
+     */
+    private static final int BINARY = 0;
+    private static final int CALL = 1;
+    private static final int INDEX = 2;
+    private static final int GROUP = 3;
+
+    private final String source;
+    private final Lexer lexer;
+
+    private final Token.Type[] types = new Token.Type[WINDOW];
+    private final Token.Kind[] kinds = new Token.Kind[WINDOW];
+    private final int[] starts = new int[WINDOW];
+    private final int[] ends = new int[WINDOW];
+    private int index = 0;
+    private int size = 0;
+
+    private int[] nested = new int[16];
+    private int nesting = 0;
+    private int[] operands = new int[16];
+    private int[] minimums = new int[16];
+    private int depth = 0;
+
+    /**
+     * Set once the lexer failed, after which it cannot lex any further.
+     */
+    private boolean failed = false;
+
+    public Recognizer(String source) {
+        this.source = source;
+        this.lexer = new Lexer(source);
+    }
+
+    /**
+     * Validates the source, as in {@link Recognizer#validateSource()}.
+     */
+    public static void validate(String source) throws ParseException {
+        new Recognizer(source).validateSource();
+    }
+
+    /**
+     * Validates the {@code source} rule, throwing the exception {@link
+     * Parser#parseSource()} would throw for the tokens of the source.
+     */
+    public void validateSource() throws ParseException {
+        try
+        {
+            while (has(0))
+            {
+                topLevel();
+            }
+        }
+        catch (ParseException e)
+        {
+            while (!failed && lexer.hasNext())
+            {
+                lexer.scan();
+            }
+            throw e;
+        }
+    }
+
+    private void topLevel() throws ParseException {
+        switch (kinds[slot(0)])
+        {
+            case LIST:
+                advance();
+                list();
+                break;
+            case VAR:
+                advance();
+                mutable();
+                break;
+            case VAL:
+                advance();
+                immutable();
+                break;
+            case FUN:
+                function();
+                break;
+            default:
+                throw new ParseException("Expected Global or Function", start(0));
+        }
+    }
+
+    private void list() throws ParseException {
+        if (!peek(0, Token.Type.IDENTIFIER) || !peek(1, Token.Kind.COLON) || !peek(2, Token.Type.IDENTIFIER)
+                || !peek(3, Token.Kind.ASSIGN) || !peek(4, Token.Kind.LEFT_BRACKET))
+        {
+            throw new ParseException("Invalid List Statement", end(-1));
+        }
+        index += 5;
+        expression();
+        while (match(Token.Kind.COMMA))
+        {
+            expression();
+        }
+        if (!match(Token.Kind.RIGHT_BRACKET))
+        {
+            throw new ParseException("Missing Bracket", end(-1));
+        }
+        if (!match(Token.Kind.SEMICOLON))
+        {
+            throw new ParseException("Missing Semicolon", end(-1));
+        }
+    }
+
+    private void mutable() throws ParseException {
+        if (!peek(0, Token.Type.IDENTIFIER) || !peek(1, Token.Kind.COLON) || !peek(2, Token.Type.IDENTIFIER))
+        {
+            throw new ParseException("Invalid Mutable Statement", end(-1));
+        }
+        index += 3;
+        if (match(Token.Kind.ASSIGN))
+        {
+            expression();
+        }
+        if (!match(Token.Kind.SEMICOLON))
+        {
+            throw new ParseException("Missing Semicolon", end(-1));
+        }
+    }
+
+    private void immutable() throws ParseException {
+        if (!peek(0, Token.Type.IDENTIFIER) || !peek(1, Token.Kind.COLON) || !peek(2, Token.Type.IDENTIFIER))
+        {
+            throw new ParseException("Invalid Immutable Statement", end(-1));
+        }
+        index += 3;
+        if (!match(Token.Kind.ASSIGN))
+        {
+            throw new ParseException("Missing Equality", end(-1));
+        }
+        expression();
+        if (!match(Token.Kind.SEMICOLON))
+        {
+            throw new ParseException("Missing Semicolon", end(-1));
+        }
+    }
+
+    private void function() throws ParseException {
+        advance();
+        if (!match(Token.Type.IDENTIFIER))
+        {
+            throw new ParseException("Expected Function Name", end(-1));
+        }
+        if (!match(Token.Kind.LEFT_PAREN))
+        {
+            throw new ParseException("Missing Parenthesis", end(-1));
+        }
+        if (match(Token.Type.IDENTIFIER))
+        {
+            parameterType();
+        }
+        while (match(Token.Kind.COMMA))
+        {
+            if (!match(Token.Type.IDENTIFIER))
+            {
+                throw new ParseException("Trailing Comma", end(-1));
+            }
+            parameterType();
+        }
+        if (!match(Token.Kind.RIGHT_PAREN))
+        {
+            throw new ParseException("Missing Parenthesis", end(-1));
+        }
+        if (peek(0, Token.Kind.COLON) && peek(1, Token.Type.IDENTIFIER))
+        {
+            index += 2;
+        }
+        if (!match(Token.Kind.DO))
+        {
+            throw new ParseException("Expected DO", start(-1));
+        }
+        block(true);
+        if (!match(Token.Kind.END))
+        {
+            throw new ParseException("No END", end(-1));
+        }
+    }
+
+    private void parameterType() throws ParseException {
+        if (!peek(0, Token.Kind.COLON) || !peek(1, Token.Type.IDENTIFIER))
+        {
+            throw new ParseException("Missing argument type", end(-1));
+        }
+        index += 2;
+    }
+
+    /**
+     * Validates a block with an explicit stack of the blocks and compound
+     * statements being validated, as {@link Parser} parses them.
+     */
+    private void block(boolean branches) throws ParseException {
+        nesting = 0;
+        nest(branches ? BRANCHES : PLAIN);
+        while (nesting > 0)
+        {
+            int block = nested[nesting - 1];
+            if (!endsBlock(block == BRANCHES))
+            {
+                statement();
+                continue;
+            }
+            nesting--;
+            if (nesting > 0)
+            {
+                endBlock();
+            }
+        }
+    }
+
+    /**
+     * Validates the next statement, pushing compound statements along with
+     * their first block.
+     */
+    private void statement() throws ParseException {
+        switch (has(0) ? kinds[slot(0)] : Token.Kind.NONE)
+        {
+            case LET:
+                advance();
+                declaration();
+                return;
+            case SWITCH:
+                advance();
+                expression();
+                nest(SWITCH);
+                startCase();
+                return;
+            case IF:
+                advance();
+                expression();
+                if (!match(Token.Kind.DO))
+                {
+                    throw new ParseException("Missing DO", end(-1));
+                }
+                nest(IF);
+                nest(BRANCHES);
+                return;
+            case WHILE:
+                advance();
+                expression();
+                if (!match(Token.Kind.DO))
+                {
+                    throw new ParseException("Missing \"DO\"", start(-1));
+                }
+                nest(WHILE);
+                nest(PLAIN);
+                return;
+            case RETURN:
+                advance();
+                expression();
+                semicolon();
+                return;
+            default:
+                break;
+        }
+        expression();
+        if (match(Token.Kind.ASSIGN))
+        {
+            expression();
+        }
+        semicolon();
+    }
+
+    /**
+     * Continues the compound statement on top of the stack after one of its
+     * blocks ended.
+     */
+    private void endBlock() throws ParseException {
+        int statement = nested[nesting - 1];
+        if (statement == IF && match(Token.Kind.ELSE))
+        {
+            nested[nesting - 1] = ELSE;
+            nest(BRANCHES);
+        }
+        else if (statement == CASE)
+        {
+            startCase();
+        }
+        else if (!match(Token.Kind.END))
+        {
+            throw new ParseException("Missing END", end(-1));
+        }
+        else
+        {
+            nesting--;
+        }
+    }
+
+    /**
+     * Validates the start of the next case or default of the switch on top of
+     * the stack, pushing its block.
+     */
+    private void startCase() throws ParseException {
+        if (match(Token.Kind.CASE))
+        {
+            expression();
+            if (!match(Token.Kind.COLON))
+            {
+                throw new ParseException("Missing colon", end(-1));
+            }
+            nested[nesting - 1] = CASE;
+        }
+        else if (match(Token.Kind.DEFAULT))
+        {
+            nested[nesting - 1] = SWITCH;
+        }
+        else
+        {
+            throw new ParseException("Missing DEFAULT", end(-1));
+        }
+        nest(BRANCHES);
+    }
+
+    private void nest(int kind) {
+        if (nesting == nested.length)
+        {
+            nested = Arrays.copyOf(nested, 2 * nesting);
+        }
+        nested[nesting++] = kind;
+    }
+
+    private void semicolon() throws ParseException {
+        if (!match(Token.Kind.SEMICOLON))
+        {
+            throw new ParseException("Missing a closing semicolon", end(-1));
+        }
+    }
+
+    private void declaration() throws ParseException {
+        if (!match(Token.Type.IDENTIFIER))
+        {
+            throw new ParseException("Invalid LET Statement", start(-1));
+        }
+        if (peek(0, Token.Kind.COLON) && peek(1, Token.Type.IDENTIFIER))
+        {
+            index += 2;
+        }
+        if (match(Token.Kind.ASSIGN))
+        {
+            expression();
+        }
+        if (!match(Token.Kind.SEMICOLON))
+        {
+            throw new ParseException("Missing Semicolon", end(-1));
+        }
+    }
+
+    private void expression() throws ParseException {
+        binary(Parser.LOGICAL);
+    }
+
+    /**
+     * Validates a chain of binary operators with an explicit stack of the
+     * operands being validated, as {@link Parser} parses them. The minimum
+     * precedence of a chain is kept for each operator waiting for its right
+     * operand, and 0 for calls, indexed accesses and groups.
+     */
+    private void binary(int minimum) throws ParseException {
+        depth = 0;
+        operand(BINARY, minimum);
+        while (true)
+        {
+            boolean value = primary();
+            while (value)
+            {
+                int operand = operands[depth - 1];
+                if (operand == BINARY)
+                {
+                    int precedence = has(0) ? Parser.PRECEDENCE[kinds[slot(0)].ordinal()] : 0;
+                    if (precedence < minimums[depth - 1])
+                    {
+                        depth--;
+                        if (depth == 0)
+                        {
+                            return;
+                        }
+                        continue;
+                    }
+                    advance();
+                    operand(BINARY, precedence + 1);
+                    value = false;
+                }
+                else if (operand == CALL && match(Token.Kind.COMMA))
+                {
+                    operand(BINARY, Parser.LOGICAL);
+                    value = false;
+                }
+                else if (operand == INDEX ? !match(Token.Kind.RIGHT_BRACKET) : !match(Token.Kind.RIGHT_PAREN))
+                {
+                    throw operand == INDEX
+                            ? new ParseException("Missing Bracket", start(-1))
+                            : new ParseException("Missing Parenthesis", end(-1));
+                }
+                else
+                {
+                    depth--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Validates the start of the next operand, returning true for literals
+     * and plain accesses, or pushing calls, indexed accesses and groups
+     * along with an expression for their contents and returning false.
+     */
+    private boolean primary() throws ParseException {
+        if (peek(0, Token.Kind.NIL) || peek(0, Token.Kind.TRUE) || peek(0, Token.Kind.FALSE)
+                || peek(0, Token.Type.INTEGER) || peek(0, Token.Type.DECIMAL)
+                || peek(0, Token.Type.CHARACTER) || peek(0, Token.Type.STRING))
+        {
+            advance();
+            return true;
+        }
+        else if (match(Token.Type.IDENTIFIER))
+        {
+            if (match(Token.Kind.LEFT_PAREN))
+            {
+                if (match(Token.Kind.RIGHT_PAREN))
+                {
+                    return true;
+                }
+                operand(CALL, 0);
+            }
+            else if (match(Token.Kind.LEFT_BRACKET))
+            {
+                operand(INDEX, 0);
+            }
+            else
+            {
+                return true;
+            }
+        }
+        else if (match(Token.Kind.LEFT_PAREN))
+        {
+            operand(GROUP, 0);
+        }
+        else
+        {
+            throw new ParseException("Invalid Expression", start(-1));
+        }
+        operand(BINARY, Parser.LOGICAL);
+        return false;
+    }
+
+    private void operand(int kind, int minimum) {
+        if (depth == operands.length)
+        {
+            operands = Arrays.copyOf(operands, 2 * depth);
+            minimums = Arrays.copyOf(minimums, 2 * depth);
+        }
+        operands[depth] = kind;
+        minimums[depth] = minimum;
+        depth++;
+    }
+
+    /**
+     * Returns true if the next token ends a block, as in the parser.
+     */
+    private boolean endsBlock(boolean branches) {
+        if (!has(0))
+        {
+            return false;
+        }
+        switch (kinds[slot(0)])
+        {
+            case END:
+            case LIST:
+            case VAR:
+            case VAL:
+            case FUN:
+                return true;
+            case ELSE:
+            case CASE:
+            case DEFAULT:
+                return branches;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns true if there is a token at index + offset, scanning tokens
+     * into the window as needed.
+     */
+    private boolean has(int offset) {
+        while (size <= index + offset && !failed && lexer.hasNext())
+        {
+            int slot = size % WINDOW;
+            starts[slot] = lexer.index();
+            try
+            {
+                types[slot] = lexer.scan();
+            }
+            catch (ParseException e)
+            {
+                failed = true;
+                throw e;
+            }
+            ends[slot] = lexer.index();
+            kinds[slot] = Token.Kind.of(types[slot], source, starts[slot], ends[slot] - starts[slot]);
+            size++;
+        }
+        return index + offset < size;
+    }
+
+    private int slot(int offset) {
+        return Math.floorMod(index + offset, WINDOW);
+    }
+
+    /**
+     * Returns the index of the first character of the token at index +
+     * offset, and the index just past its last character.
+     */
+    private int start(int offset) {
+        return starts[slot(offset)];
+    }
+
+    private int end(int offset) {
+        return ends[slot(offset)];
+    }
+
+    private void advance() {
+        index++;
+    }
+
+    private boolean peek(int offset, Token.Kind kind) {
+        return has(offset) && kinds[slot(offset)] == kind;
+    }
+
+    private boolean peek(int offset, Token.Type type) {
+        return has(offset) && types[slot(offset)] == type;
+    }
+
+    private boolean match(Token.Kind kind) {
+        boolean peek = peek(0, kind);
+        if (peek)
+        {
+            advance();
+        }
+        return peek;
+    }
+
+    private boolean match(Token.Type type) {
+        boolean peek = peek(0, type);
+        if (peek)
+        {
+            advance();
+        }
+        return peek;
+    }
+
+}
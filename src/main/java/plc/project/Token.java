@@ -1,5 +1,9 @@
 package plc.project;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.CharBuffer;
+
 public final class Token {
 
     public enum Type {
@@ -11,39 +15,281 @@ public final class Token {
         OPERATOR
     }
 
+    /**
+     * Classifies keywords and operators, so the parser can dispatch on a
+     * single switch instead of comparing literals. Every other token,
+     * including identifiers and literals, is {@link #NONE}.
+     */
+    public enum Kind {
+        NONE,
+        LIST, VAR, VAL, FUN, DO, END, LET, SWITCH, CASE, DEFAULT,
+        IF, ELSE, WHILE, RETURN, NIL, TRUE, FALSE,
+        LEFT_PAREN, RIGHT_PAREN, LEFT_BRACKET, RIGHT_BRACKET,
+        COMMA, COLON, SEMICOLON, ASSIGN,
+        EQUAL, NOT_EQUAL, LESS, GREATER, AND, OR,
+        PLUS, MINUS, STAR, SLASH, CARET;
+
+        private static final String[] KEYWORDS = new String[32];
+        private static final Kind[] KEYWORD_KINDS = new Kind[32];
+        private static final Kind[] OPERATORS = new Kind[128];
+
+        static {
+            for (Kind kind : values()) {
+                if (kind.ordinal() >= LIST.ordinal() && kind.ordinal() <= FALSE.ordinal()) {
+                    int hash = hash(kind.name(), 0, kind.name().length());
+                    if (KEYWORDS[hash] != null) {
+                        throw new AssertionError("Keyword hash collision: " + kind);
+                    }
+                    KEYWORDS[hash] = kind.name();
+                    KEYWORD_KINDS[hash] = kind;
+                }
+            }
+            String operators = "()[],:;=<>+-*/^";
+            Kind[] kinds = {LEFT_PAREN, RIGHT_PAREN, LEFT_BRACKET, RIGHT_BRACKET, COMMA, COLON, SEMICOLON,
+                    ASSIGN, LESS, GREATER, PLUS, MINUS, STAR, SLASH, CARET};
+            for (int i = 0; i < kinds.length; i++) {
+                OPERATORS[operators.charAt(i)] = kinds[i];
+            }
+        }
+
+        /**
+         * A perfect hash of the keywords into 32 slots, using only the first
+         * and last characters and the length.
+         */
+        private static int hash(CharSequence source, int index, int length) {
+            return (17 * source.charAt(index) + 2 * source.charAt(index + length - 1) + length) & 31;
+        }
+
+        /**
+         * Returns the kind of the token with the given type whose literal is
+         * the slice of the source at the given index and length.
+         */
+        static Kind of(Type type, CharSequence source, int index, int length) {
+            if (type == Type.IDENTIFIER && length >= 2 && length <= 7) {
+                int hash = hash(source, index, length);
+                String keyword = KEYWORDS[hash];
+                if (keyword == null || keyword.length() != length) {
+                    return NONE;
+                }
+                for (int i = 0; i < length; i++) {
+                    if (source.charAt(index + i) != keyword.charAt(i)) {
+                        return NONE;
+                    }
+                }
+                return KEYWORD_KINDS[hash];
+            } else if (type == Type.OPERATOR && length == 1) {
+                char c = source.charAt(index);
+                return c < 128 && OPERATORS[c] != null ? OPERATORS[c] : NONE;
+            } else if (type == Type.OPERATOR && length == 2) {
+                char c = source.charAt(index);
+                char d = source.charAt(index + 1);
+                return d == '=' ? c == '=' ? EQUAL : c == '!' ? NOT_EQUAL : NONE
+                        : c == '&' && d == '&' ? AND : c == '|' && d == '|' ? OR : NONE;
+            }
+            return NONE;
+        }
+
+    }
+
     private final Type type;
-    private final String literal;
+    private final Kind kind;
     private final int index;
+    private final int length;
+    private final CharSequence source;
+    private String literal;
+    private Object value;
 
     public Token(Type type, String literal, int index) {
         this.type = type;
+        this.source = null;
         this.literal = literal;
         this.index = index;
+        this.length = literal.length();
+        this.kind = Kind.of(type, literal, 0, length);
+    }
+
+    /**
+     * Creates a token whose literal is the slice of the source at the given
+     * index and length. The literal is only copied out of the source the
+     * first time {@link #getLiteral()} is called. The token keeps the source
+     * reachable for as long as it is.
+     */
+    public Token(Type type, CharSequence source, int index, int length) {
+        this.type = type;
+        this.source = source;
+        this.index = index;
+        this.length = length;
+        this.kind = Kind.of(type, source, index, length);
+    }
+
+    /**
+     * Creates a token whose value was already decoded by the lexer while
+     * scanning it.
+     */
+    Token(Type type, String literal, int index, Object value) {
+        this(type, literal, index);
+        this.value = value;
+    }
+
+    /**
+     * Creates a slice-backed token whose value was already decoded by the
+     * lexer while scanning it.
+     */
+    Token(Type type, CharSequence source, int index, int length, Object value) {
+        this(type, source, index, length);
+        this.value = value;
+    }
+
+    /**
+     * Creates a copy of the token at the given index of the given source,
+     * which holds the same literal there.
+     */
+    private Token(Token token, CharSequence source, int index) {
+        this.type = token.type;
+        this.kind = token.kind;
+        this.index = index;
+        this.length = token.length;
+        this.source = token.source == null ? null : source;
+        this.literal = token.literal;
+        this.value = token.value;
+    }
+
+    /**
+     * Returns the token moved to the given index of the given source, which
+     * must hold the same literal there, keeping its decoded value. A
+     * slice-backed token then refers to the given source rather than the
+     * one it was lexed from, so that source need not stay reachable.
+     */
+    Token rebase(CharSequence source, int index) {
+        if (index == this.index && (this.source == null || this.source == source)) {
+            return this;
+        }
+        return new Token(this, source, index);
+    }
+
+    /**
+     * Returns the source of a slice-backed token, or null if the token owns
+     * its literal.
+     */
+    CharSequence getSource() {
+        return source;
     }
 
     public Type getType() {
         return type;
     }
 
+    /**
+     * Returns the keyword or operator kind of the token, classified when the
+     * token is created.
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
     public String getLiteral() {
+        String literal = this.literal;
+        if (literal == null) {
+            literal = source.subSequence(index, index + length).toString();
+            this.literal = literal;
+        }
         return literal;
     }
 
+    /**
+     * Returns the literal as a view of the source for slice-backed tokens,
+     * without copying it.
+     */
+    public CharSequence getText() {
+        return source == null ? literal : CharBuffer.wrap(source, index, index + length);
+    }
+
+    /**
+     * Returns the value of an integer, decimal, character or string literal,
+     * as a {@link BigInteger}, {@link BigDecimal}, {@link Character} or
+     * {@link String} with any escapes and quotes removed. Tokens created by
+     * the lexer usually have their value decoded while scanning; otherwise it
+     * is decoded from the literal the first time this is called. Returns null
+     * for identifiers and operators.
+     */
+    public Object getValue() {
+        Object value = this.value;
+        if (value == null && type != Type.IDENTIFIER && type != Type.OPERATOR) {
+            value = decode(type, getLiteral());
+            this.value = value;
+        }
+        return value;
+    }
+
+    private static Object decode(Type type, String literal) {
+        switch (type) {
+            case INTEGER:
+                return new BigInteger(literal);
+            case DECIMAL:
+                return new BigDecimal(literal);
+            case CHARACTER:
+                return literal.charAt(1) == '\\' ? Lexer.unescape(literal.charAt(2)) : literal.charAt(1);
+            default:
+                return unescape(literal, 1, literal.length() - 1);
+        }
+    }
+
+    /**
+     * Returns the characters of the literal between start and end with all
+     * escapes replaced, in a single pass.
+     */
+    static String unescape(String literal, int start, int end) {
+        int escape = literal.indexOf('\\', start);
+        if (escape < 0 || escape >= end) {
+            return literal.substring(start, end);
+        }
+        StringBuilder builder = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = literal.charAt(i);
+            builder.append(c == '\\' && i + 1 < end ? Lexer.unescape(literal.charAt(++i)) : c);
+        }
+        return builder.toString();
+    }
+
     public int getIndex() {
         return index;
     }
 
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns true if the literal is equal to the given string, comparing
+     * against the source slice for slice-backed tokens.
+     */
+    public boolean literalEquals(String other) {
+        if (source == null) {
+            return literal.equals(other);
+        } else if (length != other.length()) {
+            return false;
+        } else if (source instanceof String) {
+            return ((String) source).regionMatches(index, other, 0, length);
+        }
+        for (int i = 0; i < length; i++) {
+            if (source.charAt(index + i) != other.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public boolean equals(Object obj) {
         return obj instanceof Token
                 && type == ((Token) obj).type
-                && literal.equals(((Token) obj).literal)
+                && literalEquals(((Token) obj).getLiteral())
                 && index == ((Token) obj).index;
     }
 
     @Override
     public String toString() {
-        return type + "=" + literal + "@" + index;
+        return type + "=" + getLiteral() + "@" + index;
     }
 
 }
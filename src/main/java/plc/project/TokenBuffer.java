@@ -0,0 +1,94 @@
+package plc.project;
+
+import java.util.Arrays;
+
+/**
+ * A compact alternative to a {@code List<Token>}, storing the type, kind,
+ * start index and length of every token in primitive arrays over the original
+ * source. {@link Token} objects are only created by {@link #get(int)}.
+ */
+public final class TokenBuffer {
+
+    private static final Token.Type[] TYPES = Token.Type.values();
+    private static final Token.Kind[] KINDS = Token.Kind.values();
+
+    private final String source;
+    private byte[] types = new byte[1024];
+    private byte[] kinds = new byte[1024];
+    private int[] starts = new int[1024];
+    private int[] lengths = new int[1024];
+    private int size = 0;
+
+    public TokenBuffer(String source) {
+        this.source = source;
+    }
+
+    /**
+     * Lexes the given source into a new buffer, as in {@link Lexer#lex()}.
+     */
+    public static TokenBuffer lex(String source) {
+        TokenBuffer buffer = new TokenBuffer(source);
+        new Lexer(source).lex(buffer);
+        return buffer;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Token.Type getType(int token) {
+        return TYPES[types[token]];
+    }
+
+    public Token.Kind getKind(int token) {
+        return KINDS[kinds[token]];
+    }
+
+    public int getIndex(int token) {
+        return starts[token];
+    }
+
+    public int getLength(int token) {
+        return lengths[token];
+    }
+
+    public String getLiteral(int token) {
+        return source.substring(starts[token], starts[token] + lengths[token]);
+    }
+
+    /**
+     * Returns true if the literal of the token is equal to the given string,
+     * without copying the literal out of the source.
+     */
+    public boolean literalEquals(int token, String literal) {
+        return lengths[token] == literal.length()
+                && source.regionMatches(starts[token], literal, 0, literal.length());
+    }
+
+    /**
+     * Materializes the token at the given position.
+     */
+    public Token get(int token) {
+        return new Token(getType(token), source, starts[token], lengths[token]);
+    }
+
+    public void add(Token.Type type, int start, int length) {
+        if (size == types.length) {
+            int capacity = size + (size >> 1);
+            types = Arrays.copyOf(types, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        types[size] = (byte) type.ordinal();
+        kinds[size] = (byte) Token.Kind.of(type, source, start, length).ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        size++;
+    }
+
+}
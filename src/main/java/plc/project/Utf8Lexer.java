@@ -0,0 +1,77 @@
+package plc.project;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A lexer working directly on UTF-8 encoded bytes, such as a memory-mapped
+ * file, which produces the same tokens as {@link Lexer} on the decoded text
+ * without ever decoding the whole input.
+ *
+ * The scanning is that of {@link Lexer}, over a {@link Lexer.CharStream}
+ * which decodes multi-byte characters as they are read. Identifiers, numbers
+ * and operators are ASCII, so their literals are slices of the bytes. Only
+ * tokens containing non-ASCII characters, such as string and character
+ * literals, are decoded. Token indices are byte offsets from the position of
+ * the buffer; {@link #charIndex(int)} maps them back to char offsets, which
+ * is what any {@link ParseException} thrown by this lexer reports.
+ *
+ * As with {@link Lexer}, a supplementary character outside of a literal is
+ * lexed as two operators, one per surrogate. The second has the byte offset
+ * of the character plus one, so it still maps to the right char offset.
+ */
+public final class Utf8Lexer implements Iterator<Token> {
+
+    private final Lexer.CharStream chars;
+    private final Lexer lexer;
+
+    /**
+     * Creates a lexer over the bytes between the position and the limit of
+     * the buffer, which is not modified.
+     */
+    public Utf8Lexer(ByteBuffer bytes) {
+        this.chars = new Lexer.CharStream(bytes);
+        this.lexer = new Lexer(chars);
+    }
+
+    /**
+     * Creates a lexer over the file at the given path, which is mapped into
+     * memory rather than read.
+     */
+    public Utf8Lexer(Path path) throws IOException {
+        this(map(path));
+    }
+
+    private static ByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    public List<Token> lex() {
+        return lexer.lex();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return lexer.hasNext();
+    }
+
+    @Override
+    public Token next() {
+        return lexer.next();
+    }
+
+    /**
+     * Returns the char offset of the character at the given byte offset.
+     */
+    public int charIndex(int byteIndex) {
+        return chars.charIndex(byteIndex);
+    }
+
+}
@@ -1,6 +1,7 @@
 package plc.project;
 
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -562,6 +563,39 @@ public final class AnalyzerTests {
         );
     }
 
+    @Test
+    public void testSlots() {
+        String source = "VAR total: Integer = 1;\nVAR count: Integer = 2;\n" +
+                "FUN f(): Integer DO\n    LET x: Integer = count;\n" +
+                "    WHILE x > 1 DO LET y: Integer = x; x = y - total; END\n    RETURN x;\nEND\n";
+        Ast.Source ast = new Parser(new Lexer(source).lex()).parseSource();
+        Analyzer analyzer = new Analyzer(new Scope(null));
+        ast.getGlobals().forEach(global -> analyzer.visit(global));
+        ast.getFunctions().forEach(function -> analyzer.visit(function));
+
+        Ast.Function function = ast.getFunctions().get(0);
+        Assertions.assertEquals(2, function.getFrameSize());
+        Assertions.assertEquals(1, ast.getGlobals().get(1).getSlot());
+        Ast.Statement.Declaration x = (Ast.Statement.Declaration) function.getStatements().get(0);
+        Assertions.assertEquals(0, x.getSlot());
+        assertSlot(1, 1, (Ast.Expression.Access) x.getValue().get());
+        Ast.Statement.While loop = (Ast.Statement.While) function.getStatements().get(1);
+        Assertions.assertEquals(1, ((Ast.Statement.Declaration) loop.getStatements().get(0)).getSlot());
+        Ast.Statement.Assignment assignment = (Ast.Statement.Assignment) loop.getStatements().get(1);
+        assertSlot(0, 0, (Ast.Expression.Access) assignment.getReceiver());
+        Ast.Expression.Binary difference = (Ast.Expression.Binary) assignment.getValue();
+        assertSlot(0, 1, (Ast.Expression.Access) difference.getLeft());
+        assertSlot(1, 0, (Ast.Expression.Access) difference.getRight());
+        Ast.Expression.Access resolved = new Ast.Expression.Access(Optional.empty(), "x");
+        resolved.setSlot(0, 0);
+        Assertions.assertEquals(new Ast.Expression.Access(Optional.empty(), "x"), resolved);
+    }
+
+    private static void assertSlot(int depth, int slot, Ast.Expression.Access access) {
+        Assertions.assertEquals(depth, access.getDepth(), access.getName());
+        Assertions.assertEquals(slot, access.getSlot(), access.getName());
+    }
+
     /**
      * Helper function for tests. If {@param expected} is {@code null}, analysis
      * is expected to throw a {@link RuntimeException}.
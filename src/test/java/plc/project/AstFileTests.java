@@ -0,0 +1,79 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Tests saving analyzed sources with {@link AstFile} and loading them back.
+ */
+public final class AstFileTests {
+
+    private static final String SOURCE = "VAR total: Integer = 1;\nVAL name: String = \"plc\";\n" +
+            "FUN f(): Integer DO\n    LET x: Integer = total + 2;\n    print(name + x);\n" +
+            "    IF x > 1 DO x = x * 3; END\n    RETURN x;\nEND\n";
+
+    @Test
+    public void testRoundTrip(@TempDir Path directory) throws IOException {
+        Ast.Source ast = analyze(SOURCE);
+        Path path = directory.resolve("source.ast");
+        AstFile.write(path, ast, 42);
+
+        Ast.Source loaded = AstFile.read(path, 42).get();
+        Assertions.assertEquals(ast, loaded);
+        List<Ast.Statement> statements = loaded.getFunctions().get(0).getStatements();
+        Assertions.assertSame(((Ast.Statement.Declaration) statements.get(0)).getVariable(),
+                ((Ast.Expression.Access) ((Ast.Statement.Return) statements.get(3)).getValue()).getVariable());
+        Assertions.assertSame(Environment.Type.INTEGER, loaded.getGlobals().get(0).getVariable().getType());
+        Assertions.assertEquals(1, loaded.getGlobals().get(1).getSlot());
+        Assertions.assertEquals(ast.getFunctions().get(0).getFrameSize(), loaded.getFunctions().get(0).getFrameSize());
+        Assertions.assertEquals(0, ((Ast.Statement.Declaration) statements.get(0)).getSlot());
+        Ast.Expression.Access total = (Ast.Expression.Access) ((Ast.Expression.Binary)
+                ((Ast.Statement.Declaration) statements.get(0)).getValue().get()).getLeft();
+        Assertions.assertEquals(1, total.getDepth());
+        Assertions.assertEquals(0, total.getSlot());
+        Assertions.assertFalse(AstFile.read(path, 43).isPresent());
+        Assertions.assertFalse(AstFile.read(directory.resolve("missing.ast"), 42).isPresent());
+    }
+
+    @Test
+    public void testFailedWrite(@TempDir Path directory) throws IOException {
+        Path path = directory.resolve("source.ast");
+        Files.createDirectory(path);
+        Files.createFile(path.resolve("entry"));
+        Assertions.assertThrows(IOException.class, () -> AstFile.write(path, analyze(SOURCE), 42));
+        Assertions.assertFalse(Files.exists(directory.resolve("source.ast.tmp")));
+        Assertions.assertTrue(Files.isDirectory(path));
+    }
+
+    @Test
+    public void testTruncatedFile(@TempDir Path directory) throws IOException {
+        Path path = directory.resolve("source.ast");
+        AstFile.write(path, analyze(SOURCE), 42);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(40);
+        }
+        Assertions.assertFalse(AstFile.read(path, 42).isPresent());
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, -1), 16);
+        }
+        Assertions.assertFalse(AstFile.read(path, 42).isPresent());
+    }
+
+    private static Ast.Source analyze(String source) {
+        Ast.Source ast = new Parser(new Lexer(source).lex()).parseSource();
+        Analyzer analyzer = new Analyzer(new Scope(null));
+        ast.getGlobals().forEach(global -> analyzer.visit(global));
+        ast.getFunctions().forEach(function -> analyzer.visit(function));
+        return ast;
+    }
+
+}
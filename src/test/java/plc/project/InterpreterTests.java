@@ -456,6 +456,47 @@ final class InterpreterTests {
         test(ast, expected, new Scope(null));
     }
 
+    @Test
+    void testPackedList() {
+        // [1, 5, 10]; list[1] = 2 ^ 70;
+        List<Object> expected = Arrays.asList(BigInteger.ONE, BigInteger.valueOf(5), BigInteger.TEN);
+        Ast ast = new Ast.Expression.PlcList(new long[] {1, 5, 10});
+        Scope scope = new Scope(null);
+        scope.defineVariable("list", true, Environment.create(new Interpreter(scope).visit(ast).getValue()));
+        Assertions.assertEquals(expected, scope.lookupVariable("list").getValue().getValue());
+
+        test(new Ast.Statement.Assignment(
+                new Ast.Expression.Access(Optional.of(new Ast.Expression.Literal(BigInteger.valueOf(1))), "list"),
+                new Ast.Expression.Literal(BigInteger.valueOf(2).pow(70))
+        ), Environment.NIL.getValue(), scope);
+        Assertions.assertEquals(Arrays.asList(BigInteger.ONE, BigInteger.valueOf(2).pow(70), BigInteger.TEN),
+                scope.lookupVariable("list").getValue().getValue());
+        test(ast, expected, new Scope(null));
+    }
+
+    @Test
+    void testSlots() {
+        String source = "VAR total: Integer = 0;\nVAR step: Integer = 2;\n" +
+                "FUN main(): Integer DO\n    LET i: Integer = 0;\n" +
+                "    WHILE i < 4 DO LET j: Integer = i * step; IF j > 2 DO total = total + j; END i = i + 1; END\n" +
+                "    step = total;\n    RETURN i;\nEND\n";
+        Ast.Source ast = new Parser(new Lexer(source).lex()).parseSource();
+        Scope scope = new Scope(null);
+        scope.defineFunction("main", "main", Arrays.asList(), Environment.Type.INTEGER, args -> Environment.NIL);
+        new Analyzer(scope).visit(ast);
+        Assertions.assertEquals(2, ast.getFunctions().get(0).getFrameSize());
+
+        Interpreter resolved = new Interpreter(new Scope(null));
+        Assertions.assertEquals(BigInteger.valueOf(4), resolved.visit(ast).getValue());
+        Interpreter unresolved = new Interpreter(new Scope(null));
+        unresolved.visit(new Parser(new Lexer(source).lex()).parseSource());
+        for (String name : Arrays.asList("total", "step")) {
+            Assertions.assertEquals(unresolved.getScope().lookupVariable(name).getValue().getValue(),
+                    resolved.getScope().lookupVariable(name).getValue().getValue());
+        }
+        Assertions.assertEquals(BigInteger.TEN, resolved.getScope().lookupVariable("total").getValue().getValue());
+    }
+
     private static Scope test(Ast ast, Object expected, Scope scope) {
         Interpreter interpreter = new Interpreter(scope);
         if (expected != null) {
@@ -2,12 +2,22 @@ package plc.project;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
 
 public class LexerTests {
@@ -100,6 +110,7 @@ public class LexerTests {
         return Stream.of(
                 Arguments.of("Character", "(", true),
                 Arguments.of("Comparison", "!=", true),
+                Arguments.of("Or", "||", true),
                 Arguments.of("Space", " ", false),
                 Arguments.of("Tab", "\t", false)
         );
@@ -130,6 +141,189 @@ public class LexerTests {
         );
     }
 
+    @Test
+    void testReader() {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            input.append("LET x").append(i).append(" = -").append(i).append(".5;\n");
+        }
+        input.append('"').append("long string ".repeat(1000)).append("\\n\"");
+        Assertions.assertEquals(new Lexer(input.toString()).lex(), new Lexer(new StringReader(input.toString())).lex());
+    }
+
+    @Test
+    void testReaderException() {
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Lexer(new StringReader("x ".repeat(5000) + "\"unterminated")).lex());
+        Assertions.assertEquals(10013, exception.getIndex());
+    }
+
+    @Test
+    void testTokenBuffer() {
+        String input = "FUN main(): Integer DO\n    LET x = -1.5 * \'c\';\n    print(\"a\\tb\");\nEND";
+        List<Token> expected = new Lexer(input).lex();
+        TokenBuffer buffer = TokenBuffer.lex(input);
+        Assertions.assertEquals(expected.size(), buffer.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assertions.assertEquals(expected.get(i), buffer.get(i));
+            Assertions.assertTrue(buffer.literalEquals(i, expected.get(i).getLiteral()));
+            Assertions.assertEquals(expected.get(i).getKind(), buffer.getKind(i));
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testKind(String test, String input, Token.Kind expected) {
+        Assertions.assertEquals(expected, new Lexer(input).lexToken().getKind());
+    }
+
+    private static Stream<Arguments> testKind() {
+        return Stream.of(
+                Arguments.of("Keyword", "DEFAULT", Token.Kind.DEFAULT),
+                Arguments.of("Short Keyword", "DO", Token.Kind.DO),
+                Arguments.of("Lowercase", "end", Token.Kind.NONE),
+                Arguments.of("Hash Collision", "VBR", Token.Kind.NONE),
+                Arguments.of("Identifier", "LISTS", Token.Kind.NONE),
+                Arguments.of("String", "\"END\"", Token.Kind.NONE),
+                Arguments.of("Operator", "^", Token.Kind.CARET),
+                Arguments.of("Or", "||", Token.Kind.OR),
+                Arguments.of("Other Operator", "$", Token.Kind.NONE)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testValue(String test, String input, Object expected) {
+        Token token = new Lexer(input).lexToken();
+        Assertions.assertEquals(expected, token.getValue());
+        Assertions.assertEquals(expected, new Token(token.getType(), input, 0).getValue());
+        Assertions.assertEquals(expected, TokenBuffer.lex(input).get(0).getValue());
+        Assertions.assertEquals(expected, new Lexer(new StringReader(input)).lexToken().getValue());
+    }
+
+    private static Stream<Arguments> testValue() {
+        return Stream.of(
+                Arguments.of("Integer", "-123", BigInteger.valueOf(-123)),
+                Arguments.of("Large Integer", "123456789012345678901234567890", new BigInteger("123456789012345678901234567890")),
+                Arguments.of("Decimal", "1.50", new BigDecimal("1.50")),
+                Arguments.of("Negative Decimal", "-0.05", new BigDecimal("-0.05")),
+                Arguments.of("Large Decimal", "1234567890.1234567890", new BigDecimal("1234567890.1234567890")),
+                Arguments.of("Character", "'c'", 'c'),
+                Arguments.of("Escaped Character", "'\\''", '\''),
+                Arguments.of("String", "\"string\"", "string"),
+                Arguments.of("Escapes", "\"a\\tb\\\\nc\\\"\"", "a\tb\\nc\""),
+                Arguments.of("Identifier", "name", null)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testRelex(String test, String source, int offset, int removed, String inserted) {
+        String edited = source.substring(0, offset) + inserted + source.substring(offset + removed);
+        List<Token> previous = new Lexer(source).lex();
+        List<Token> relexed = IncrementalLexer.relex(previous, edited, offset, removed, inserted);
+        Assertions.assertEquals(new Lexer(edited).lex(), relexed);
+        for (Token token : relexed) {
+            Assertions.assertSame(edited, token.getSource(), token.toString());
+        }
+    }
+
+    private static Stream<Arguments> testRelex() {
+        String source = "LET x = 5;\nprint(\"a b\");\nLET y = x != 1.5;";
+        return Stream.of(
+                Arguments.of("Extend Identifier", source, 5, 0, "yz"),
+                Arguments.of("Split Identifier", source, 5, 0, " "),
+                Arguments.of("Merge Operator", source, 32, 2, "="),
+                Arguments.of("Negative Number", source, 8, 0, "-"),
+                Arguments.of("Open String", source, 17, 0, "\" + \""),
+                Arguments.of("Delete Everything", source, 0, source.length(), ""),
+                Arguments.of("Append", source, source.length(), 0, " END"),
+                Arguments.of("Replace Same Length", source, 8, 1, "7")
+        );
+    }
+
+    @Test
+    void testParallel() {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            input.append("LET x").append(i).append(" = -").append(i).append(".5 + \'\\\'\' != \" \\\" \";\n");
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Assertions.assertEquals(new Lexer(input.toString()).lex(), ParallelLexer.lex(input.toString(), pool));
+            input.append("\"unterminated");
+            ParseException exception = Assertions.assertThrows(ParseException.class,
+                    () -> ParallelLexer.lex(input.toString(), pool));
+            Assertions.assertEquals(input.length(), exception.getIndex());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testSliceLiteral() {
+        String source = "LET name = value;";
+        Token token = new Token(Token.Type.IDENTIFIER, source, 4, 4);
+        Assertions.assertTrue(token.literalEquals("name"));
+        Assertions.assertFalse(token.literalEquals("nam"));
+        Assertions.assertEquals("name", token.getText().toString());
+        Assertions.assertEquals(new Token(Token.Type.IDENTIFIER, "name", 4), token);
+        Assertions.assertEquals("name", token.getLiteral());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testUtf8(String test, String input) {
+        Utf8Lexer lexer = new Utf8Lexer(ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8)));
+        try {
+            List<Token> expected = new Lexer(input).lex();
+            List<Token> actual = lexer.lex();
+            Assertions.assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                Assertions.assertEquals(expected.get(i).getType(), actual.get(i).getType());
+                Assertions.assertEquals(expected.get(i).getLiteral(), actual.get(i).getLiteral());
+                Assertions.assertEquals(expected.get(i).getIndex(), lexer.charIndex(actual.get(i).getIndex()));
+            }
+        } catch (ParseException e) {
+            Assertions.assertEquals(e, Assertions.assertThrows(ParseException.class, lexer::lex));
+        }
+    }
+
+    private static Stream<Arguments> testUtf8() {
+        return Stream.of(
+                Arguments.of("ASCII", "LET x = -1.5 + 'c' != \"s\\n\";"),
+                Arguments.of("String", "print(\"h\u00e9llo \u4e16\u754c\") + x"),
+                Arguments.of("Supplementary String", "\"\ud83d\ude00\" \ud83d\ude00 y"),
+                Arguments.of("Character", "'\u00e9' '\u4e16' z"),
+                Arguments.of("Operator", "a \u00b1 b \u2260 c"),
+                Arguments.of("Supplementary Character", "x '\ud83d\ude00'"),
+                Arguments.of("Invalid Escape", "\"\u00e9\\\u00e9\""),
+                Arguments.of("Unterminated String", "\u00e9 \"\u4e16")
+        );
+    }
+
+    @Test
+    void testUtf8Position() {
+        ByteBuffer bytes = ByteBuffer.wrap("LET x = \"\u00e9\"; y".getBytes(StandardCharsets.UTF_8));
+        bytes.position(4).limit(bytes.limit() - 3);
+        Utf8Lexer lexer = new Utf8Lexer(bytes);
+        Assertions.assertEquals(Arrays.asList(
+                new Token(Token.Type.IDENTIFIER, "x", 0),
+                new Token(Token.Type.OPERATOR, "=", 2),
+                new Token(Token.Type.STRING, "\"\u00e9\"", 4)
+        ), lexer.lex());
+        Assertions.assertEquals(4, bytes.position());
+    }
+
+    @Test
+    void testUtf8File(@TempDir Path directory) throws IOException {
+        String input = "VAR s = \"\u00fcber\"; VAR t = s;";
+        Path file = Files.writeString(directory.resolve("source.plc"), input);
+        List<Token> tokens = new Utf8Lexer(file).lex();
+        Assertions.assertEquals(new Token(Token.Type.STRING, "\"\u00fcber\"", 8), tokens.get(3));
+        Assertions.assertEquals(new Token(Token.Type.IDENTIFIER, "t", 21), tokens.get(6));
+    }
+
     @Test
     void testException() {
         ParseException exception = Assertions.assertThrows(ParseException.class,
@@ -137,6 +331,24 @@ public class LexerTests {
         Assertions.assertEquals(13, exception.getIndex());
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testExceptionIndex(String test, String input, String message, int index) {
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Lexer(input).lex());
+        Assertions.assertEquals(new ParseException(message, index), exception);
+    }
+
+    private static Stream<Arguments> testExceptionIndex() {
+        return Stream.of(
+                Arguments.of("Empty Character", "x = \'\';", "Missing character", 5),
+                Arguments.of("Unterminated Character", "\'ab\'", "Invalid character", 2),
+                Arguments.of("Invalid Character Escape", "\'\\q\'", "Invalid Escape", 2),
+                Arguments.of("Newline In String", "\"abc\ndef\"", "Unterminated String", 4),
+                Arguments.of("Invalid String Escape", "print(\"a\\zb\");", "Invalid Escape", 9)
+        );
+    }
+
     /**
      * Tests that lexing the input through {@link Lexer#lexToken()} produces a
      * single token with the expected type and literal matching the input.
@@ -5,12 +5,16 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
 
+import java.io.StringReader;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
@@ -70,6 +74,14 @@ final class ParserTests {
                                         new Ast.Statement.Expression(new Ast.Expression.Access(Optional.empty(), "stmt"))
                                 )))
                         )
+                ),
+                Arguments.of("Stray Token",
+                        Arrays.asList(
+                                //stmt;
+                                new Token(Token.Type.IDENTIFIER, "stmt", 0),
+                                new Token(Token.Type.OPERATOR, ";", 4)
+                        ),
+                        null
                 )
         );
     }
@@ -276,6 +288,18 @@ final class ParserTests {
                 Arguments.of("Escape Character",
                         Arrays.asList(new Token(Token.Type.STRING, "\"Hello,\\nWorld!\"", 0)),
                         new Ast.Expression.Literal("Hello,\nWorld!")
+                ),
+                Arguments.of("False Literal",
+                        Arrays.asList(new Token(Token.Type.IDENTIFIER, "FALSE", 0)),
+                        new Ast.Expression.Literal(Boolean.FALSE)
+                ),
+                Arguments.of("Escaped Backslash",
+                        Arrays.asList(new Token(Token.Type.STRING, "\"a\\\\nb\"", 0)),
+                        new Ast.Expression.Literal("a\\nb")
+                ),
+                Arguments.of("Escaped Character Literal",
+                        Arrays.asList(new Token(Token.Type.CHARACTER, "'\\t'", 0)),
+                        new Ast.Expression.Literal('\t')
                 )
         );
     }
@@ -369,6 +393,55 @@ final class ParserTests {
                                 new Ast.Expression.Access(Optional.empty(), "expr1"),
                                 new Ast.Expression.Access(Optional.empty(), "expr2")
                         )
+                ),
+                Arguments.of("Precedence",
+                        Arrays.asList(
+                                //a || b == c + d * e
+                                new Token(Token.Type.IDENTIFIER, "a", 0),
+                                new Token(Token.Type.OPERATOR, "||", 2),
+                                new Token(Token.Type.IDENTIFIER, "b", 5),
+                                new Token(Token.Type.OPERATOR, "==", 7),
+                                new Token(Token.Type.IDENTIFIER, "c", 10),
+                                new Token(Token.Type.OPERATOR, "+", 12),
+                                new Token(Token.Type.IDENTIFIER, "d", 14),
+                                new Token(Token.Type.OPERATOR, "*", 16),
+                                new Token(Token.Type.IDENTIFIER, "e", 18)
+                        ),
+                        new Ast.Expression.Binary("||",
+                                new Ast.Expression.Access(Optional.empty(), "a"),
+                                new Ast.Expression.Binary("==",
+                                        new Ast.Expression.Access(Optional.empty(), "b"),
+                                        new Ast.Expression.Binary("+",
+                                                new Ast.Expression.Access(Optional.empty(), "c"),
+                                                new Ast.Expression.Binary("*",
+                                                        new Ast.Expression.Access(Optional.empty(), "d"),
+                                                        new Ast.Expression.Access(Optional.empty(), "e")
+                                                )
+                                        )
+                                )
+                        )
+                ),
+                Arguments.of("Left Associative",
+                        Arrays.asList(
+                                //a - b ^ c / d
+                                new Token(Token.Type.IDENTIFIER, "a", 0),
+                                new Token(Token.Type.OPERATOR, "-", 2),
+                                new Token(Token.Type.IDENTIFIER, "b", 4),
+                                new Token(Token.Type.OPERATOR, "^", 6),
+                                new Token(Token.Type.IDENTIFIER, "c", 8),
+                                new Token(Token.Type.OPERATOR, "/", 10),
+                                new Token(Token.Type.IDENTIFIER, "d", 12)
+                        ),
+                        new Ast.Expression.Binary("-",
+                                new Ast.Expression.Access(Optional.empty(), "a"),
+                                new Ast.Expression.Binary("/",
+                                        new Ast.Expression.Binary("^",
+                                                new Ast.Expression.Access(Optional.empty(), "b"),
+                                                new Ast.Expression.Access(Optional.empty(), "c")
+                                        ),
+                                        new Ast.Expression.Access(Optional.empty(), "d")
+                                )
+                        )
                 )
         );
     }
@@ -515,6 +588,339 @@ final class ParserTests {
         test(input, expected, Parser::parseSource);
     }
 
+    @Test
+    void testStreaming() {
+        String source = generatedSource(500);
+        Ast.Source expected = new Parser(new Lexer(source).lex()).parseSource();
+        Parser parser = new Parser(new Lexer(new StringReader(source)));
+        Assertions.assertEquals(expected, parser.parseSource());
+    }
+
+    @Test
+    void testConsumers() {
+        String source = generatedSource(20) + "VAL y: Integer = 1;\nFUN g() DO (;\nEND\n";
+        List<Ast> items = new ArrayList<>();
+        Parser parser = new Parser(new Lexer(new StringReader(source)));
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> parser.parseSource(items::add, items::add));
+        Assertions.assertEquals(source.indexOf("(;"), exception.getIndex());
+        Assertions.assertEquals(22, items.size());
+        Assertions.assertInstanceOf(Ast.Global.class, items.get(21));
+        List<ParseException> errors = new ArrayList<>();
+        Ast.Source expected = new Parser(new Lexer(source).lex()).parseSource(new ArrayList<>());
+        items.clear();
+        new Parser(new Lexer(new StringReader(source))).parseSource(items::add, items::add, errors);
+        Assertions.assertEquals(Arrays.asList(exception), errors);
+        Assertions.assertEquals(expected, Parser.source(items));
+    }
+
+    @Test
+    void testTokenBuffer() {
+        String source = generatedSource(500);
+        Ast.Source expected = new Parser(new Lexer(source).lex()).parseSource();
+        Assertions.assertEquals(expected, new Parser(TokenBuffer.lex(source)).parseSource());
+    }
+
+    @Test
+    void testParallel() {
+        String source = generatedSource(2000);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<Token> tokens = new Lexer(source).lex();
+            Assertions.assertEquals(new Parser(tokens).parseSource(), ParallelParser.parse(tokens, pool));
+            String misaligned = source + "FUN g() DO LET a = END; LET b = VAR; END\n" + source.substring(source.indexOf("FUN"));
+            tokens = new Lexer(misaligned).lex();
+            Assertions.assertEquals(new Parser(tokens).parseSource(), ParallelParser.parse(tokens, pool));
+            List<Token> invalid = new Lexer(source.replace("FUN f1000(", "FUN f1000((")).lex();
+            ParseException exception = Assertions.assertThrows(ParseException.class,
+                    () -> ParallelParser.parse(invalid, pool));
+            Assertions.assertEquals(source.indexOf("FUN f1000(") + 10, exception.getIndex());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testPipelined() {
+        String source = generatedSource(2000);
+        Assertions.assertEquals(new Parser(new Lexer(source).lex()).parseSource(), PipelinedParser.parse(source));
+        String invalid = source.replace("FUN f1000(", "FUN f1000((");
+        String both = invalid.replace("function 1500", "function \\q");
+        for (String input : List.of(invalid, both, "LET x = 1;" + source, source + "\"unterminated")) {
+            ParseException expected = Assertions.assertThrows(ParseException.class,
+                    () -> new Parser(new Lexer(input).lex()).parseSource());
+            ParseException actual = Assertions.assertThrows(ParseException.class,
+                    () -> PipelinedParser.parse(input));
+            Assertions.assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void testLazyBodies() {
+        String source = generatedSource(100) + "FUN g() DO SWITCH 1 CASE 1: WHILE TRUE DO END DEFAULT END END\n";
+        List<Token> tokens = new Lexer(source).lex();
+        Parser parser = new Parser(tokens);
+        parser.setLazyBodies(true);
+        Assertions.assertEquals(new Parser(tokens).parseSource(), parser.parseSource());
+
+        String invalid = source.replace("RETURN total - 1;\nEND\nFUN f51(", "RETURN total - 1 END\nFUN f51(");
+        ParseException expected = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer(invalid).lex()).parseSource());
+        Parser lazy = new Parser(new Lexer(invalid).lex());
+        lazy.setLazyBodies(true);
+        ParseException actual = Assertions.assertThrows(ParseException.class, lazy::parseSource);
+        Assertions.assertEquals(expected, actual);
+
+        for (String keywords : Arrays.asList("FUN f() DO y = IF; END FUN g() DO END", "FUN f() DO LET END; END",
+                "FUN f() DO LET x: Integer = WHILE + f(SWITCH, DO[END]); WHILE x DO ELSE; END END FUN g() DO END")) {
+            Parser keywordParser = new Parser(new Lexer(keywords).lex());
+            keywordParser.setLazyBodies(true);
+            Assertions.assertEquals(new Parser(new Lexer(keywords).lex()).parseSource(), keywordParser.parseSource());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "",
+            "LIST list: Integer = [1, 2.0, 'c', \"s\", NIL, TRUE, FALSE];\nVAR x: Integer;\nVAL y: Integer = -1;",
+            "FUN f(a: Integer, b: String): Integer DO LET x; LET y: Integer = a; x = y; f(x, a[1]); RETURN (a + b) * 2 ^ 3 < 1 && TRUE; END",
+            "FUN g() DO IF a DO b; ELSE c; END SWITCH x CASE 1: y; DEFAULT z; END WHILE a != b DO a = a - 1; END END",
+            "stmt;", "LIST x: Integer = 1;", "LIST x: Integer = [1, 2;", "LIST x: Integer = [1]", "VAR x Integer;", "VAR x: Integer = 1",
+            "VAL x: Integer;", "VAL x Integer = 1;", "VAL x: Integer = 1", "FUN (", "FUN f DO", "FUN f(a) DO END", "FUN f(a: T,) DO END",
+            "FUN f(a: T, b) DO END", "FUN f(a: T END", "FUN f() x; END", "FUN f() DO x;", "FUN f() DO x", "FUN f() DO x = ; END",
+            "FUN f() DO LET 1; END", "FUN f() DO LET x: Integer = 1 END", "FUN f() DO IF x x; END END", "FUN f() DO IF x DO x; ",
+            "FUN f() DO SWITCH x CASE 1 x; DEFAULT END END", "FUN f() DO SWITCH x END", "FUN f() DO SWITCH x DEFAULT x;",
+            "FUN f() DO WHILE x x; END END", "FUN f() DO WHILE x DO ELSE END END", "FUN f() DO RETURN x END",
+            "FUN f() DO f(1, 2; END", "FUN f() DO a[1; END", "FUN f() DO (1 + 2; END", "FUN f() DO 1 + ; END",
+            "FUN f() DO x; END stmt; \"unterminated", "FUN f() DO '' END", "VAL x: Integer = 1 $ 2;",
+    })
+    void testRecognizer(String source) {
+        ParseException expected = null;
+        try {
+            new Parser(new Lexer(source).lex()).parseSource();
+        } catch (ParseException e) {
+            expected = e;
+        }
+        ParseException actual = null;
+        try {
+            Recognizer.validate(source);
+        } catch (ParseException e) {
+            actual = e;
+        }
+        Assertions.assertEquals(expected, actual);
+        if (expected != null) {
+            Assertions.assertEquals(expected.getMessage(), actual.getMessage());
+        }
+    }
+
+    @Test
+    void testDeepNesting() {
+        int depth = 100000;
+        String groups = "VAL x: Integer = " + "(f(a[".repeat(depth) + "1" + "]))".repeat(depth) + ";";
+        Ast.Expression expression = new Parser(new Lexer(groups).lex()).parseSource().getGlobals().get(0).getValue().get();
+        for (int i = 0; i < depth; i++) {
+            expression = ((Ast.Expression.Group) expression).getExpression();
+            expression = ((Ast.Expression.Function) expression).getArguments().get(0);
+            expression = ((Ast.Expression.Access) expression).getOffset().get();
+        }
+        Assertions.assertEquals(new Ast.Expression.Literal(BigInteger.ONE), expression);
+        Recognizer.validate(groups);
+
+        String statements = "FUN f() DO " + "WHILE x DO IF y DO SWITCH z DEFAULT ".repeat(depth) + "RETURN 1;"
+                + " END END END".repeat(depth) + " END";
+        Ast.Statement statement = new Parser(new Lexer(statements).lex()).parseSource().getFunctions().get(0).getStatements().get(0);
+        for (int i = 0; i < depth; i++) {
+            statement = ((Ast.Statement.While) statement).getStatements().get(0);
+            statement = ((Ast.Statement.If) statement).getThenStatements().get(0);
+            statement = ((Ast.Statement.Switch) statement).getCases().get(0).getStatements().get(0);
+        }
+        Assertions.assertInstanceOf(Ast.Statement.Return.class, statement);
+        Recognizer.validate(statements);
+
+        String unclosed = statements.substring(0, statements.length() - 8);
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer(unclosed).lex()).parseSource());
+        Assertions.assertEquals(new ParseException("Invalid Expression", unclosed.lastIndexOf("END")), exception);
+        Assertions.assertEquals(exception, Assertions.assertThrows(ParseException.class, () -> Recognizer.validate(unclosed)));
+    }
+
+    @Test
+    void testFlatAst() {
+        String source = "LIST list: Integer = [1, -2];\nVAR x: Decimal;\nVAL y: Character = 'y';\n" +
+                "FUN f(a: Integer, b: String): Integer DO\n" +
+                "    LET z;\n    LET w: String = \"w\" + b;\n    list[a - 1] = (a * 2);\n" +
+                "    SWITCH a CASE 1: print(NIL); DEFAULT WHILE TRUE DO RETURN 1; END END\n" +
+                "    IF a > 0 DO z = 1; ELSE z = 2; END\n    RETURN z;\nEND\n" +
+                "FUN main() DO f(1, \"\"); END\n";
+        Ast.Source ast = new Parser(new Lexer(source).lex()).parseSource();
+        FlatAst flat = FlatAst.encode(ast);
+        Assertions.assertEquals(ast, flat.toAst());
+        Ast.Source generated = new Parser(new Lexer(generatedSource(100)).lex()).parseSource();
+        Assertions.assertEquals(generated, FlatAst.encode(generated).toAst());
+
+        FlatAst.Cursor cursor = flat.cursor();
+        Assertions.assertEquals(FlatAst.Kind.SOURCE, cursor.kind());
+        Assertions.assertEquals(3, cursor.data());
+        cursor.down(3);
+        Assertions.assertEquals(FlatAst.Kind.FUNCTION, cursor.kind());
+        Assertions.assertEquals("f", cursor.pool(0));
+        Assertions.assertEquals(6, cursor.size());
+        cursor.down(3).down(1);
+        Assertions.assertEquals(FlatAst.Kind.CASE, cursor.kind());
+        Assertions.assertTrue(cursor.next());
+        Assertions.assertEquals(0, cursor.data());
+        Assertions.assertFalse(cursor.next());
+        Assertions.assertEquals(FlatAst.Kind.WHILE, cursor.down(0).kind());
+        Assertions.assertTrue(cursor.up() && cursor.up() && cursor.up());
+        Assertions.assertTrue(cursor.next());
+        Assertions.assertEquals(FlatAst.Kind.FUNCTION, cursor.kind());
+        Assertions.assertEquals("main", cursor.pool(0));
+        Assertions.assertTrue(cursor.up());
+        Assertions.assertFalse(cursor.up());
+    }
+
+    @Test
+    void testInterning() {
+        String source = "FUN f(): Integer DO\n    LET x: Integer = 4;\n" +
+                "    LET a: Integer = (1 + 2) * x;\n    LET b: Integer = (1 + 2) * x;\n" +
+                "    RETURN a + b + (1 + 2) * 3 + (1 + 2) * 3;\nEND\n";
+        Parser parser = new Parser(new Lexer(source).lex());
+        parser.setInterning(true);
+        Ast.Function function = parser.parseSource().getFunctions().get(0);
+        Ast.Expression.Binary a = (Ast.Expression.Binary) ((Ast.Statement.Declaration) function.getStatements().get(1)).getValue().get();
+        Ast.Expression.Binary b = (Ast.Expression.Binary) ((Ast.Statement.Declaration) function.getStatements().get(2)).getValue().get();
+        Assertions.assertNotSame(a, b);
+        Assertions.assertNotSame(a.getRight(), b.getRight());
+        Assertions.assertSame(a.getLeft(), b.getLeft());
+        Ast.Expression.Binary sum = (Ast.Expression.Binary) ((Ast.Statement.Return) function.getStatements().get(3)).getValue();
+        Assertions.assertSame(((Ast.Expression.Binary) sum.getLeft()).getRight(), sum.getRight());
+        Assertions.assertSame(a.getLeft(), ((Ast.Expression.Binary) sum.getRight()).getLeft());
+
+        Ast.Function expected = new Parser(new Lexer(source).lex()).parseSource().getFunctions().get(0);
+        Assertions.assertEquals(expected, function);
+        new Analyzer(new Scope(null)).visit(expected);
+        new Analyzer(new Scope(null)).visit(function);
+        Assertions.assertEquals(expected, function);
+    }
+
+    @Test
+    void testRecovery() {
+        String source = "VAR x: Integer = 1\nFUN f() DO\n    LET y = ;\n    print(y);\n    z = (1;\nEND\nVAL w: Integer = 2;\n";
+        List<ParseException> errors = new ArrayList<>();
+        Ast.Source ast = new Parser(new Lexer(source).lex()).parseSource(errors);
+        Assertions.assertEquals(Arrays.asList(
+                new ParseException("Missing Semicolon", 18),
+                new ParseException("Invalid Expression", 40),
+                new ParseException("Missing Parenthesis", 68)
+        ), errors);
+        Assertions.assertEquals(new Ast.Source(
+                Arrays.asList(new Ast.Global("w", "Integer", false, Optional.of(new Ast.Expression.Literal(BigInteger.valueOf(2))))),
+                Arrays.asList(new Ast.Function("f", Arrays.asList(), Arrays.asList(), Optional.empty(), Arrays.asList(
+                        new Ast.Statement.Expression(new Ast.Expression.Function("print", Arrays.asList(
+                                new Ast.Expression.Access(Optional.empty(), "y")
+                        )))
+                )))
+        ), ast);
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer(source).lex()).parseSource());
+        Assertions.assertEquals(errors.get(0), exception);
+        Assertions.assertEquals(0, exception.getStackTrace().length);
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testPackedList(String test, String elements, boolean packed, List<Object> values) {
+        Ast.Global global = new Parser(new Lexer("LIST list: Integer = [" + elements + "];").lex()).parseGlobal();
+        Ast.Expression.PlcList list = (Ast.Expression.PlcList) global.getValue().get();
+        List<Ast.Expression> expected = new ArrayList<>();
+        values.forEach(value -> expected.add(new Ast.Expression.Literal(value)));
+        Assertions.assertEquals(packed, list.isPacked());
+        Assertions.assertEquals(new Ast.Expression.PlcList(expected), list);
+        Assertions.assertEquals(list, new Ast.Expression.PlcList(expected));
+        Assertions.assertEquals(new Ast.Expression.PlcList(expected).toString(), list.toString());
+    }
+
+    private static Stream<Arguments> testPackedList() {
+        return Stream.of(
+                Arguments.of("Integers", "1, -2, 3", true, Arrays.asList(BigInteger.ONE, BigInteger.valueOf(-2), BigInteger.valueOf(3))),
+                Arguments.of("Decimals", "1.0, 0.000010, -2.5", true,
+                        Arrays.asList(new BigDecimal("1.0"), new BigDecimal("0.000010"), new BigDecimal("-2.5"))),
+                Arguments.of("Long Integer", "9223372036854775807", true, Arrays.asList(BigInteger.valueOf(Long.MAX_VALUE))),
+                Arguments.of("Big Integer", "1, 9223372036854775808", false, Arrays.asList(BigInteger.ONE, BigInteger.ONE.shiftLeft(63))),
+                Arguments.of("Inexact Decimal", "1.0, 0.10000000000000000001", false,
+                        Arrays.asList(new BigDecimal("1.0"), new BigDecimal("0.10000000000000000001"))),
+                Arguments.of("Scaled Decimal", "1.50", false, Arrays.asList(new BigDecimal("1.50"))),
+                Arguments.of("Mixed", "1, 2.0", false, Arrays.asList(BigInteger.ONE, new BigDecimal("2.0")))
+        );
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"LIST list: Integer = [1, 2]", "LIST list: Integer = [1, 2 3];", "LIST list: Integer = [1, 2,];",
+            "LIST list: Integer = [1, 2 + 3;", "LIST list: Integer = [1, 2"})
+    void testPackedListError(String source) {
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer(source).lex()).parseSource());
+        Assertions.assertEquals(Assertions.assertThrows(ParseException.class, () -> Recognizer.validate(source)), exception);
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testIncremental(String test, String source, int offset, int removed, String inserted) {
+        String edited = source.substring(0, offset) + inserted + source.substring(offset + removed);
+        IncrementalParser parser = new IncrementalParser(source);
+        Ast.Source previous = parser.getAst();
+        Ast.Source ast = parser.edit(offset, removed, inserted);
+        Assertions.assertEquals(new Parser(new Lexer(edited).lex()).parseSource(), ast);
+        Assertions.assertEquals(new Lexer(edited).lex(), parser.getTokens());
+        Assertions.assertSame(previous.getFunctions().get(0), ast.getFunctions().get(0));
+        Assertions.assertSame(previous.getFunctions().get(19), ast.getFunctions().get(ast.getFunctions().size() - 1));
+    }
+
+    private static Stream<Arguments> testIncremental() {
+        String source = generatedSource(20);
+        int body = source.indexOf("RETURN", source.indexOf("FUN f10"));
+        int end = source.indexOf("END\n", body);
+        return Stream.of(
+                Arguments.of("Edit Body", source, body + 7, 5, "x + 1"),
+                Arguments.of("Insert Function", source, end + 4, 0, "FUN g() DO print(1); END\n"),
+                Arguments.of("Delete Function", source, source.indexOf("FUN f10"), source.indexOf("FUN f11") - source.indexOf("FUN f10"), ""),
+                Arguments.of("Merge Functions", source, end, source.indexOf("DO\n", end) + 3 - end, ""),
+                Arguments.of("Insert Global", source, source.indexOf("FUN f5"), 0, "VAL y: Integer = 1;\n")
+        );
+    }
+
+    @Test
+    void testIncrementalError() {
+        String source = generatedSource(5);
+        IncrementalParser parser = new IncrementalParser(source);
+        Ast.Source previous = parser.getAst();
+        int offset = source.indexOf("RETURN");
+        String edited = source.substring(0, offset) + "(" + source.substring(offset + 6);
+        ParseException expected = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer(edited).lex()).parseSource());
+        Assertions.assertEquals(expected, Assertions.assertThrows(ParseException.class, () -> parser.edit(offset, 6, "(")));
+        Assertions.assertSame(previous, parser.getAst());
+        Assertions.assertEquals(source, parser.getSource());
+        Assertions.assertEquals(new Parser(new Lexer(source + "VAR z: Integer;").lex()).parseSource(),
+                parser.edit(source.length(), 0, "VAR z: Integer;"));
+    }
+
+    /**
+     * Generates a source with the given number of functions, used to test the
+     * different token sources against each other.
+     */
+    private static String generatedSource(int functions) {
+        StringBuilder source = new StringBuilder("VAR total: Integer = 0;\n");
+        for (int i = 0; i < functions; i++) {
+            source.append("FUN f").append(i).append("(x: Integer): Integer DO\n")
+                    .append("    LET name = \"function ").append(i).append("\\n\";\n")
+                    .append("    IF x > ").append(i).append(" DO total = total + x * 2; ELSE print(name); END\n")
+                    .append("    RETURN total - 1;\n")
+                    .append("END\n");
+        }
+        return source.toString();
+    }
+
     /**
      * Standard test function. If expected is null, a ParseException is expected
      * to be thrown (not used in the provided tests).